@@ -0,0 +1,39 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ApiResponse;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * 标记返回错误码的 ApiResponse
+ * 控制器捕获异常后以 HTTP 200 返回 ApiResponse.error，只看状态码统计不到这些失败；
+ * 这里在写出响应体前检查 code，不是200时设置请求属性，由 EndpointMetricsFilter 计为失败。
+ */
+@ControllerAdvice
+public class ApiResponseMetricsAdvice implements ResponseBodyAdvice<Object> {
+
+    // 请求属性名：本次请求返回了错误码
+    public static final String FAILED_ATTRIBUTE = ApiResponseMetricsAdvice.class.getName() + ".failed";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof ApiResponse<?> apiResponse && apiResponse.getCode() != 200
+                && request instanceof ServletServerHttpRequest servletRequest) {
+            servletRequest.getServletRequest().setAttribute(FAILED_ATTRIBUTE, Boolean.TRUE);
+        }
+        return body;
+    }
+}
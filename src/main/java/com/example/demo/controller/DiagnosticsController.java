@@ -0,0 +1,165 @@
+package com.example.demo.controller;
+
+import com.example.demo.dto.ApiResponse;
+import com.example.demo.service.EndpointMetrics;
+import com.example.demo.service.PinningMonitor;
+import com.example.demo.service.SqlMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.sql.DataSource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 诊断控制器
+ * 默认关闭（diagnostics.api.enabled）。配置了 diagnostics.api.token 时请求需带相同的 X-Diagnostics-Token 请求头；
+ * 没有配置时只允许本机直接访问，带有 X-Forwarded-For / Forwarded 请求头（经过反向代理转发）的请求一律拒绝，
+ * 因为代理与应用在同一台机器上时所有外部请求的来源地址都是本机。
+ */
+@RestController
+@RequestMapping("/api/diagnostics")
+public class DiagnosticsController {
+
+    private static final String TOKEN_HEADER = "X-Diagnostics-Token";
+
+    @Autowired
+    private PinningMonitor pinningMonitor;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private SqlMetrics sqlMetrics;
+
+    @Autowired
+    private EndpointMetrics endpointMetrics;
+
+    @Value("${diagnostics.api.enabled:false}")
+    private boolean enabled;
+
+    @Value("${diagnostics.api.token:}")
+    private String token;
+
+    /**
+     * 虚拟线程固定事件汇总
+     */
+    @GetMapping("/pinning")
+    public ApiResponse<Map<String, Object>> getPinning(HttpServletRequest request) {
+        String denied = checkAccess(request);
+        if (denied != null) {
+            return ApiResponse.error(403, denied);
+        }
+        return ApiResponse.success(pinningMonitor.snapshot());
+    }
+
+    /**
+     * 请求线程模式和数据库连接池状态
+     */
+    @GetMapping("/threads")
+    public ApiResponse<Map<String, Object>> getThreads(HttpServletRequest request) {
+        String denied = checkAccess(request);
+        if (denied != null) {
+            return ApiResponse.error(403, denied);
+        }
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("requestThread", Thread.currentThread().toString());
+            result.put("virtual", Thread.currentThread().isVirtual());
+            result.put("platformThreads", Thread.activeCount());
+
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                HikariDataSource hikari = dataSource.unwrap(HikariDataSource.class);
+                HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+                Map<String, Object> poolData = new HashMap<>();
+                poolData.put("maximumPoolSize", hikari.getMaximumPoolSize());
+                poolData.put("connectionTimeoutMs", hikari.getConnectionTimeout());
+                if (pool != null) {
+                    poolData.put("active", pool.getActiveConnections());
+                    poolData.put("idle", pool.getIdleConnections());
+                    // 正在等待连接的线程数
+                    poolData.put("waiting", pool.getThreadsAwaitingConnection());
+                }
+                result.put("pool", poolData);
+            }
+            return ApiResponse.success(result);
+        } catch (Exception e) {
+            return ApiResponse.error("获取线程状态失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * SQL 执行统计（按累计耗时降序）
+     * @param reset 返回后是否清空统计
+     */
+    @GetMapping("/sql")
+    public ApiResponse<Map<String, Object>> getSql(
+            HttpServletRequest request,
+            @RequestParam(value = "reset", defaultValue = "false") Boolean reset) {
+        String denied = checkAccess(request);
+        if (denied != null) {
+            return ApiResponse.error(403, denied);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("queries", sqlMetrics.snapshot());
+        if (Boolean.TRUE.equals(reset)) {
+            sqlMetrics.reset();
+        }
+        return ApiResponse.success(result);
+    }
+
+    /**
+     * 接口请求统计（按累计耗时降序）
+     * @param reset 返回后是否清空统计
+     */
+    @GetMapping("/endpoints")
+    public ApiResponse<Map<String, Object>> getEndpoints(
+            HttpServletRequest request,
+            @RequestParam(value = "reset", defaultValue = "false") Boolean reset) {
+        String denied = checkAccess(request);
+        if (denied != null) {
+            return ApiResponse.error(403, denied);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("endpoints", endpointMetrics.snapshot());
+        if (Boolean.TRUE.equals(reset)) {
+            endpointMetrics.reset();
+        }
+        return ApiResponse.success(result);
+    }
+
+    /**
+     * 检查访问权限
+     * @return 拒绝的原因，允许访问时返回null
+     */
+    private String checkAccess(HttpServletRequest request) {
+        if (!enabled) {
+            return "诊断接口未启用";
+        }
+        if (!token.isEmpty()) {
+            String provided = request.getHeader(TOKEN_HEADER);
+            boolean matches = provided != null && MessageDigest.isEqual(
+                    provided.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+            return matches ? null : "诊断令牌不正确";
+        }
+        if (request.getHeader("X-Forwarded-For") != null || request.getHeader("Forwarded") != null) {
+            return "未配置诊断令牌时不允许经代理访问";
+        }
+        try {
+            return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress() ? null : "只允许本机访问";
+        } catch (UnknownHostException e) {
+            return "只允许本机访问";
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.EndpointMetrics;
+import com.example.demo.service.SqlMetrics;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 接口请求统计过滤器
+ * 统计 PostController、FriendController、UserController 的请求：耗时、响应字节数、执行的 SQL 语句数。
+ * 处理方法在请求结束后从 HandlerMapping 设置的请求属性中取得；响应字节数由包装的输出流计数，
+ * 没有经过输出流的响应（getWriter 或容器 sendfile）取 Content-Length。
+ * 状态码大于等于400、抛出异常或返回错误码的 ApiResponse（由 ApiResponseMetricsAdvice 标记）都计为失败。
+ */
+@Component
+public class EndpointMetricsFilter extends OncePerRequestFilter {
+
+    private static final Set<Class<?>> TRACKED_CONTROLLERS = Set.of(
+            PostController.class, FriendController.class, UserController.class);
+
+    private static final String[] TRACKED_PATHS = {"/api/post/", "/api/friend/", "/api/user/"};
+
+    @Autowired
+    private EndpointMetrics endpointMetrics;
+
+    @Value("${diagnostics.endpoints.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!enabled) {
+            return true;
+        }
+        String uri = request.getRequestURI();
+        for (String path : TRACKED_PATHS) {
+            if (uri.startsWith(path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        AtomicLong statements = new AtomicLong();
+        request.setAttribute(SqlMetrics.STATEMENT_COUNTER_ATTRIBUTE, statements);
+        CountingResponse counting = new CountingResponse(response);
+        boolean failed = true;
+        try {
+            chain.doFilter(request, counting);
+            failed = response.getStatus() >= 400
+                    || Boolean.TRUE.equals(request.getAttribute(ApiResponseMetricsAdvice.FAILED_ATTRIBUTE));
+        } finally {
+            Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+            if (handler instanceof HandlerMethod handlerMethod
+                    && TRACKED_CONTROLLERS.contains(handlerMethod.getBeanType())) {
+                long bytes = counting.bytes > 0 ? counting.bytes : contentLength(response);
+                endpointMetrics.record(handlerMethod.getMethod(), request,
+                        System.nanoTime() - start, bytes,
+                        statements.get(), failed);
+            }
+        }
+    }
+
+    private static long contentLength(HttpServletResponse response) {
+        String header = response.getHeader("Content-Length");
+        if (header == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(header);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 统计写出字节数的响应包装
+     */
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        private long bytes = 0;
+        private ServletOutputStream outputStream;
+
+        private CountingResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream target = super.getOutputStream();
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        target.write(b);
+                        bytes++;
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        target.write(b, off, len);
+                        bytes += len;
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        target.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        target.close();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return target.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        target.setWriteListener(listener);
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
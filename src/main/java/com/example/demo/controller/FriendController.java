@@ -1,11 +1,17 @@
 package com.example.demo.controller;
 
 import com.example.demo.dto.ApiResponse;
+import com.example.demo.dto.CursorPageResponse;
+import com.example.demo.dto.FriendSyncResponse;
+import com.example.demo.dto.PageRequest;
+import com.example.demo.dto.PageResponse;
 import com.example.demo.entity.Friend;
 import com.example.demo.entity.FriendRequest;
 import com.example.demo.entity.User;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.FriendService;
+import com.example.demo.service.FriendSuggestionService;
+import com.example.demo.service.PresenceService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
@@ -27,6 +33,12 @@ public class FriendController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private FriendSuggestionService friendSuggestionService;
+
     /**
      * 添加好友接口（发送好友申请）
      * @param userId 用户ID
@@ -95,35 +107,72 @@ public class FriendController {
     public ApiResponse<List<Map<String, Object>>> getFriendList(@RequestParam("userId") Long userId) {
         try {
             List<Friend> friendRelations = friendService.getFriendList(userId);
-            
-            // 构建返回数据（包含备注信息）
-            List<Map<String, Object>> friendList = new ArrayList<>();
-            for (Friend friendRelation : friendRelations) {
-                // 查询好友用户信息
-                User friend = userRepository.findById(friendRelation.getFriendId())
-                        .orElse(null);
-                
-                if (friend != null) {
-                    Map<String, Object> friendData = new HashMap<>();
-                    friendData.put("id", friend.getId());
-                    friendData.put("username", friend.getUsername());
-                    friendData.put("avatar", friend.getAvatar());
-                    friendData.put("sex", friend.getSex());
-                    friendData.put("location", friend.getLocation());
-                    friendData.put("signature", friend.getSignature());
-                    friendData.put("isLogging", friend.getIsLogging() != null ? friend.getIsLogging() : 0); // 在线状态
-                    friendData.put("remark", friendRelation.getRemark()); // 备注信息
-                    friendData.put("createTime", friendRelation.getCreateTime());
-                    friendList.add(friendData);
-                }
-            }
-            
-            return ApiResponse.success("获取好友列表成功", friendList);
+            return ApiResponse.success("获取好友列表成功", buildFriendList(friendRelations));
+        } catch (Exception e) {
+            return ApiResponse.error("获取好友列表失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 分页获取好友列表接口（游标分页，可按备注或用户名前缀筛选）
+     * @param userId 用户ID
+     * @param cursor 上一页返回的nextCursor（第一页不传）
+     * @param size 每页大小（默认50，最多200）
+     * @param keyword 备注或用户名前缀（可选）
+     * @return 好友列表分页结果
+     */
+    @GetMapping("/list/page")
+    public ApiResponse<CursorPageResponse<Map<String, Object>>> getFriendPage(
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "50") Integer size,
+            @RequestParam(value = "keyword", required = false) String keyword) {
+        try {
+            int finalSize = Math.max(1, Math.min(size, 200));
+            CursorPageResponse<Friend> page = friendService.getFriendPage(userId, cursor, finalSize, keyword);
+
+            CursorPageResponse<Map<String, Object>> result = new CursorPageResponse<>(
+                    buildFriendList(page.getContent()), page.getSize(), page.getHasMore(), page.getNextCursor());
+            return ApiResponse.success("获取好友列表成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
         } catch (Exception e) {
             return ApiResponse.error("获取好友列表失败：" + e.getMessage());
         }
     }
 
+    /**
+     * 增量同步好友列表接口
+     * 首次同步（sinceVersion=0）返回 fullSync=true 和当前版本号，客户端全量拉取 /list 后保存该版本号；
+     * 之后只返回该版本之后新增、删除和修改备注的好友
+     * @param userId 用户ID
+     * @param sinceVersion 上次同步到的版本号
+     * @param limit 单次最多读取的变更数（默认500，最大1000）
+     * @return 同步结果
+     */
+    @GetMapping("/sync")
+    public ApiResponse<Map<String, Object>> syncFriends(
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "sinceVersion", defaultValue = "0") Long sinceVersion,
+            @RequestParam(value = "limit", defaultValue = "500") Integer limit) {
+        try {
+            FriendSyncResponse sync = friendService.syncFriends(userId, sinceVersion,
+                    Math.max(1, Math.min(limit, 1000)));
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("fullSync", sync.getFullSync());
+            result.put("version", sync.getVersion());
+            result.put("hasMore", sync.getHasMore());
+            result.put("upserts", buildFriendList(sync.getUpserts()));
+            result.put("removedFriendIds", sync.getRemovedFriendIds());
+            return ApiResponse.success("同步成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("同步失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 检查是否是好友接口
      * @param userId 用户ID
@@ -144,6 +193,38 @@ public class FriendController {
         }
     }
 
+    /**
+     * 批量查询关系状态接口（渲染搜索结果、评论列表中的用户卡片时使用）
+     * @param userId 当前用户ID
+     * @param targetIds 目标用户ID列表（最多500个）
+     * @return 每个目标用户的关系状态：friend、pending_outgoing、pending_incoming、none、self
+     */
+    @GetMapping("/check/batch")
+    public ApiResponse<Map<String, Object>> checkFriendBatch(
+            @RequestParam("userId") Long userId,
+            @RequestParam("targetIds") List<Long> targetIds) {
+        try {
+            Map<Long, String> statuses = friendService.getRelationStatuses(userId, targetIds);
+
+            List<Map<String, Object>> statusList = new ArrayList<>();
+            for (Map.Entry<Long, String> entry : statuses.entrySet()) {
+                Map<String, Object> item = new HashMap<>();
+                item.put("userId", entry.getKey());
+                item.put("status", entry.getValue());
+                item.put("isFriend", FriendService.RELATION_FRIEND.equals(entry.getValue()));
+                statusList.add(item);
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("statuses", statusList);
+            return ApiResponse.success("查询成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("查询失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 获取好友数量接口
      * @param userId 用户ID
@@ -161,6 +242,124 @@ public class FriendController {
         }
     }
 
+    /**
+     * 共同好友接口（分页）
+     * @param userId 用户ID
+     * @param otherId 另一个用户ID
+     * @param page 页码（从1开始，默认1）
+     * @param size 每页大小（默认20）
+     * @return 共同好友数量和当前页的共同好友
+     */
+    @GetMapping("/mutual")
+    public ApiResponse<Map<String, Object>> getMutualFriends(
+            @RequestParam("userId") Long userId,
+            @RequestParam("otherId") Long otherId,
+            @RequestParam(value = "page", defaultValue = "1") Integer page,
+            @RequestParam(value = "size", defaultValue = "20") Integer size) {
+        try {
+            PageRequest pageRequest = new PageRequest(page, Math.min(size, 100));
+            long[] mutualIds = friendService.getMutualFriendIds(userId, otherId);
+
+            int from = Math.min(pageRequest.getOffset(), mutualIds.length);
+            int to = Math.min(from + pageRequest.getSize(), mutualIds.length);
+            List<Long> pageIds = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                pageIds.add(mutualIds[i]);
+            }
+
+            // 一次查询补全当前页的用户信息
+            Map<Long, User> users = new HashMap<>();
+            for (User user : userRepository.findByIds(pageIds)) {
+                users.put(user.getId(), user);
+            }
+            List<Map<String, Object>> friendList = new ArrayList<>();
+            for (Long friendId : pageIds) {
+                User friend = users.get(friendId);
+                if (friend != null) {
+                    Map<String, Object> friendData = new HashMap<>();
+                    friendData.put("id", friend.getId());
+                    friendData.put("username", friend.getUsername());
+                    friendData.put("avatar", friend.getAvatar());
+                    friendData.put("sex", friend.getSex());
+                    friendData.put("signature", friend.getSignature());
+                    friendList.add(friendData);
+                }
+            }
+
+            PageResponse<Map<String, Object>> pageResponse = new PageResponse<>(
+                    friendList, pageRequest.getPage(), pageRequest.getSize(), (long) mutualIds.length);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("count", mutualIds.length);
+            result.put("content", pageResponse.getContent());
+            result.put("page", pageResponse.getPage());
+            result.put("size", pageResponse.getSize());
+            result.put("total", pageResponse.getTotal());
+            result.put("totalPages", pageResponse.getTotalPages());
+            return ApiResponse.success("查询成功", result);
+        } catch (Exception e) {
+            return ApiResponse.error("查询失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 共同好友数量接口（资料页展示用）
+     * @param userId 用户ID
+     * @param otherId 另一个用户ID
+     * @return 共同好友数量
+     */
+    @GetMapping("/mutual/count")
+    public ApiResponse<Map<String, Object>> getMutualFriendCount(
+            @RequestParam("userId") Long userId,
+            @RequestParam("otherId") Long otherId) {
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("count", friendService.getMutualFriendCount(userId, otherId));
+            return ApiResponse.success("查询成功", result);
+        } catch (Exception e) {
+            return ApiResponse.error("查询失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 好友推荐接口（可能认识的人，按共同好友数排序）
+     * @param userId 用户ID
+     * @param limit 返回数量（默认10，最多50）
+     * @param byLocation 是否对同地区的用户加权（默认是）
+     * @return 推荐用户列表
+     */
+    @GetMapping("/suggestions")
+    public ApiResponse<List<Map<String, Object>>> getFriendSuggestions(
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "limit", defaultValue = "10") Integer limit,
+            @RequestParam(value = "byLocation", defaultValue = "true") Boolean byLocation) {
+        try {
+            int finalLimit = Math.max(1, Math.min(limit, FriendSuggestionService.MAX_LIMIT));
+            List<FriendSuggestionService.Suggestion> suggestions =
+                    friendSuggestionService.suggest(userId, finalLimit, byLocation);
+
+            List<Map<String, Object>> suggestionList = new ArrayList<>();
+            for (FriendSuggestionService.Suggestion suggestion : suggestions) {
+                User user = suggestion.getUser();
+                Map<String, Object> userData = new HashMap<>();
+                userData.put("id", user.getId());
+                userData.put("username", user.getUsername());
+                userData.put("avatar", user.getAvatar());
+                userData.put("sex", user.getSex());
+                userData.put("location", user.getLocation());
+                userData.put("signature", user.getSignature());
+                userData.put("mutualCount", suggestion.getMutualCount());
+                suggestionList.add(userData);
+            }
+
+            return ApiResponse.success("获取好友推荐成功", suggestionList);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("获取好友推荐失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 设置好友备注接口
      * @param userId 用户ID
@@ -223,49 +422,48 @@ public class FriendController {
     }
 
     /**
-     * 获取待处理的好友申请列表接口
+     * 游标分页获取待处理的好友申请接口（按申请时间倒序）
      * @param receiverId 接收者ID（当前用户）
-     * @return 好友申请列表
+     * @param cursor 上一页返回的游标（第一页不传）
+     * @param size 每页大小（默认20，最大100）
+     * @return 好友申请列表（包含申请者信息）和下一页游标
      */
     @GetMapping("/requests")
-    public ApiResponse<List<Map<String, Object>>> getFriendRequests(@RequestParam("receiverId") Long receiverId) {
+    public ApiResponse<CursorPageResponse<Map<String, Object>>> getFriendRequests(
+            @RequestParam("receiverId") Long receiverId,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", defaultValue = "20") Integer size) {
         try {
-            List<FriendRequest> requests = friendService.getPendingFriendRequests(receiverId);
-            
-            // 构建返回数据（包含申请者信息）
-            List<Map<String, Object>> requestList = new ArrayList<>();
-            for (FriendRequest request : requests) {
-                // 查询申请者信息
-                User requester = userRepository.findById(request.getRequesterId()).orElse(null);
-                
-                Map<String, Object> requestData = new HashMap<>();
-                requestData.put("id", request.getId());
-                requestData.put("requesterId", request.getRequesterId());
-                requestData.put("receiverId", request.getReceiverId());
-                requestData.put("status", request.getStatus());
-                requestData.put("createTime", request.getCreateTime());
-                requestData.put("updateTime", request.getUpdateTime());
-                
-                // 添加申请者信息
-                if (requester != null) {
-                    Map<String, Object> requesterData = new HashMap<>();
-                    requesterData.put("id", requester.getId());
-                    requesterData.put("username", requester.getUsername());
-                    requesterData.put("avatar", requester.getAvatar());
-                    requesterData.put("sex", requester.getSex());
-                    requesterData.put("signature", requester.getSignature());
-                    requestData.put("requester", requesterData);
-                }
-                
-                requestList.add(requestData);
-            }
-            
-            return ApiResponse.success("获取好友申请列表成功", requestList);
+            int pageSize = Math.max(1, Math.min(size, 100));
+            CursorPageResponse<FriendRequest> page = friendService.getPendingFriendRequestPage(receiverId, cursor, pageSize);
+
+            // 构建返回数据（一次查询补全申请者信息）
+            CursorPageResponse<Map<String, Object>> result = new CursorPageResponse<>(
+                    buildFriendRequestList(page.getContent()), page.getSize(), page.getHasMore(), page.getNextCursor());
+            return ApiResponse.success("获取好友申请列表成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
         } catch (Exception e) {
             return ApiResponse.error("获取好友申请列表失败：" + e.getMessage());
         }
     }
 
+    /**
+     * 获取待处理的好友申请数量接口（用于角标显示）
+     * @param receiverId 接收者ID（当前用户）
+     * @return 待处理申请数量
+     */
+    @GetMapping("/requests/count")
+    public ApiResponse<Map<String, Object>> getFriendRequestCount(@RequestParam("receiverId") Long receiverId) {
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("count", friendService.getPendingFriendRequestCount(receiverId));
+            return ApiResponse.success("查询成功", result);
+        } catch (Exception e) {
+            return ApiResponse.error("查询失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 同意好友申请接口
      * @param requestId 申请ID
@@ -307,6 +505,71 @@ public class FriendController {
         }
     }
 
+    /**
+     * 批量同意好友申请接口（一次请求、一个事务处理多条申请）
+     * @param receiverId 接收者ID（当前用户）
+     * @param requestIds 申请ID列表
+     * @return 已同意的好友关系和被跳过的申请ID
+     */
+    @PostMapping("/requests/accept")
+    public ApiResponse<Map<String, Object>> acceptFriendRequests(
+            @RequestParam("receiverId") Long receiverId,
+            @RequestParam("requestIds") List<Long> requestIds) {
+        try {
+            Map<Long, Friend> accepted = friendService.acceptFriendRequests(requestIds, receiverId);
+
+            // 一次查询补全新好友的用户信息
+            List<Long> friendIds = new ArrayList<>();
+            for (Friend friend : accepted.values()) {
+                friendIds.add(friend.getFriendId());
+            }
+            Map<Long, User> users = new HashMap<>();
+            for (User user : userRepository.findByIds(friendIds)) {
+                users.put(user.getId(), user);
+            }
+
+            List<Map<String, Object>> acceptedList = new ArrayList<>();
+            for (Map.Entry<Long, Friend> entry : accepted.entrySet()) {
+                Friend friend = entry.getValue();
+                Map<String, Object> friendData = new HashMap<>();
+                friendData.put("requestId", entry.getKey());
+                friendData.put("id", friend.getId());
+                friendData.put("userId", friend.getUserId());
+                friendData.put("friendId", friend.getFriendId());
+                friendData.put("remark", friend.getRemark());
+                friendData.put("createTime", friend.getCreateTime());
+
+                User friendUser = users.get(friend.getFriendId());
+                if (friendUser != null) {
+                    Map<String, Object> userData = new HashMap<>();
+                    userData.put("id", friendUser.getId());
+                    userData.put("username", friendUser.getUsername());
+                    userData.put("avatar", friendUser.getAvatar());
+                    userData.put("sex", friendUser.getSex());
+                    userData.put("signature", friendUser.getSignature());
+                    friendData.put("friend", userData);
+                }
+                acceptedList.add(friendData);
+            }
+
+            List<Long> skippedRequestIds = new ArrayList<>();
+            for (Long requestId : requestIds) {
+                if (!accepted.containsKey(requestId) && !skippedRequestIds.contains(requestId)) {
+                    skippedRequestIds.add(requestId);
+                }
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("accepted", acceptedList);
+            result.put("skippedRequestIds", skippedRequestIds);
+            return ApiResponse.success("批量同意好友申请成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("批量同意好友申请失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 拒绝好友申请接口
      * @param requestId 申请ID
@@ -326,5 +589,78 @@ public class FriendController {
             return ApiResponse.error("拒绝好友申请失败：" + e.getMessage());
         }
     }
-}
 
+    /**
+     * 构建好友申请列表数据（一次查询补全所有申请者的用户信息）
+     */
+    private List<Map<String, Object>> buildFriendRequestList(List<FriendRequest> requests) {
+        List<Long> requesterIds = new ArrayList<>();
+        for (FriendRequest request : requests) {
+            requesterIds.add(request.getRequesterId());
+        }
+        Map<Long, User> requesters = new HashMap<>();
+        for (User user : userRepository.findByIds(requesterIds)) {
+            requesters.put(user.getId(), user);
+        }
+
+        List<Map<String, Object>> requestList = new ArrayList<>();
+        for (FriendRequest request : requests) {
+            User requester = requesters.get(request.getRequesterId());
+
+            Map<String, Object> requestData = new HashMap<>();
+            requestData.put("id", request.getId());
+            requestData.put("requesterId", request.getRequesterId());
+            requestData.put("receiverId", request.getReceiverId());
+            requestData.put("status", request.getStatus());
+            requestData.put("createTime", request.getCreateTime());
+            requestData.put("updateTime", request.getUpdateTime());
+
+            // 添加申请者信息
+            if (requester != null) {
+                Map<String, Object> requesterData = new HashMap<>();
+                requesterData.put("id", requester.getId());
+                requesterData.put("username", requester.getUsername());
+                requesterData.put("avatar", requester.getAvatar());
+                requesterData.put("sex", requester.getSex());
+                requesterData.put("signature", requester.getSignature());
+                requestData.put("requester", requesterData);
+            }
+
+            requestList.add(requestData);
+        }
+        return requestList;
+    }
+
+    /**
+     * 构建好友列表数据（一次查询补全所有好友的用户信息）
+     */
+    private List<Map<String, Object>> buildFriendList(List<Friend> friendRelations) {
+        List<Long> friendIds = new ArrayList<>();
+        for (Friend friendRelation : friendRelations) {
+            friendIds.add(friendRelation.getFriendId());
+        }
+        Map<Long, User> users = new HashMap<>();
+        for (User user : userRepository.findByIds(friendIds)) {
+            users.put(user.getId(), user);
+        }
+
+        List<Map<String, Object>> friendList = new ArrayList<>();
+        for (Friend friendRelation : friendRelations) {
+            User friend = users.get(friendRelation.getFriendId());
+            if (friend != null) {
+                Map<String, Object> friendData = new HashMap<>();
+                friendData.put("id", friend.getId());
+                friendData.put("username", friend.getUsername());
+                friendData.put("avatar", friend.getAvatar());
+                friendData.put("sex", friend.getSex());
+                friendData.put("location", friend.getLocation());
+                friendData.put("signature", friend.getSignature());
+                friendData.put("isLogging", presenceService.isOnline(friend.getId()) ? 1 : 0); // 在线状态（内存）
+                friendData.put("remark", friendRelation.getRemark()); // 备注信息
+                friendData.put("createTime", friendRelation.getCreateTime());
+                friendList.add(friendData);
+            }
+        }
+        return friendList;
+    }
+}
@@ -0,0 +1,317 @@
+package com.example.demo.controller;
+
+import com.example.demo.service.ImageStorageService;
+import com.example.demo.service.MediaFileCache;
+import com.example.demo.service.PostImageDataService;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * 媒体文件控制器
+ * 提供 upload.root 目录下的图片（/media/posts/yyyy/MM/xxx.jpg）。
+ * Tomcat 支持 sendfile 时交给容器零拷贝发送，否则用 FileChannel.transferTo 写出；
+ * 支持单段 Range、ETag / If-None-Match、If-Modified-Since，按内容命名的文件返回长期不可变缓存头。
+ * 尚未迁移为文件、仍保存在数据库中的图片通过 /media/blob/{图片ID} 获取。
+ */
+@Controller
+public class MediaController {
+
+    private static final String URL_PREFIX = "/media/";
+
+    // Tomcat sendfile 请求属性
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // 文件名包含唯一ID或内容哈希的文件内容不会变化：post_<动态ID>_<uuid>、upload_<uuid>、<sha256>
+    private static final Pattern CONTENT_NAMED = Pattern.compile("^((post_\\d+_|upload_)[0-9a-f]{32}|[0-9a-f]{64})(_v\\d+)?\\.[a-z0-9]+$");
+
+    // 识别图片类型读取的字节数
+    private static final int SNIFF_BYTES = 12;
+
+    private static final String IMMUTABLE_CACHE = "public, max-age=31536000, immutable";
+    private static final String DEFAULT_CACHE = "public, max-age=3600";
+
+    @Autowired
+    private MediaFileCache mediaFileCache;
+
+    @Autowired
+    private PostImageDataService postImageDataService;
+
+    @Value("${upload.root:uploads}")
+    private String uploadRoot;
+
+    private Path root;
+
+    @PostConstruct
+    public void init() {
+        root = Paths.get(uploadRoot).toAbsolutePath().normalize();
+    }
+
+    /**
+     * 获取媒体文件
+     */
+    @RequestMapping(value = "/media/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path path = resolve(request);
+        MediaFileCache.MediaFile file = path != null ? mediaFileCache.acquire(path) : null;
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        try {
+            long size = file.getSize();
+            response.setHeader(HttpHeaders.ETAG, file.getEtag());
+            response.setDateHeader(HttpHeaders.LAST_MODIFIED, file.getLastModified());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl(path));
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            response.setContentType(contentType(path));
+
+            if (notModified(request, file)) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            long start = 0;
+            long end = size - 1;
+            String range = request.getHeader(HttpHeaders.RANGE);
+            if (range != null && ifRangeMatches(request, file)) {
+                long[] parsed = parseRange(range, size);
+                if (parsed == null) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                if (parsed.length == 2) {
+                    start = parsed[0];
+                    end = parsed[1];
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                }
+            }
+
+            long length = end - start + 1;
+            response.setContentLengthLong(length);
+            if ("HEAD".equals(request.getMethod()) || length <= 0) {
+                return;
+            }
+
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+                // 由 Tomcat 在请求处理结束后用 sendfile 发送，不经过用户态缓冲区
+                request.setAttribute(SENDFILE_FILENAME, path.toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return;
+            }
+
+            FileChannel channel = file.getChannel();
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = length;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+        } finally {
+            // sendfile 由容器自行打开文件，这里的句柄同样可以释放
+            file.release();
+        }
+    }
+
+    /**
+     * 获取保存在数据库中的动态图片（post_image.image_data），按段读取后写出
+     */
+    @RequestMapping(value = "/media/blob/{imageId}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void serveBlob(@PathVariable Long imageId, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        Long size = postImageDataService.getLength(imageId);
+        if (size == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String extension = ImageStorageService.sniffExtension(postImageDataService.readHead(imageId, SNIFF_BYTES));
+        response.setContentType(extension != null ? contentType(Paths.get("blob." + extension)) : "application/octet-stream");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, DEFAULT_CACHE);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null) {
+            long[] parsed = parseRange(range, size);
+            if (parsed == null) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length <= 0) {
+            return;
+        }
+        try {
+            postImageDataService.copyTo(imageId, start, length, response.getOutputStream());
+        } catch (IOException e) {
+            if (response.isCommitted()) {
+                // 已按 Content-Length 发出响应头，抛出异常让容器中断连接，客户端不会把不完整的内容当作完整图片
+                throw e;
+            }
+            // 还没有写出内容：图片已迁移为文件，客户端重新获取图片地址即可
+            response.reset();
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    /**
+     * 把请求路径解析为 upload.root 下的文件，越界或不合法时返回null
+     */
+    private Path resolve(HttpServletRequest request) {
+        String uri = request.getRequestURI().substring(request.getContextPath().length());
+        if (!uri.startsWith(URL_PREFIX)) {
+            return null;
+        }
+        String relative = UriUtils.decode(uri.substring(URL_PREFIX.length()), StandardCharsets.UTF_8);
+        if (relative.isEmpty() || relative.indexOf('\0') >= 0 || relative.indexOf('\\') >= 0
+                || relative.endsWith(".part") || relative.endsWith(".tmp")) {
+            return null;
+        }
+        Path path = root.resolve(relative).normalize();
+        return path.startsWith(root) && !path.equals(root) ? path : null;
+    }
+
+    /**
+     * If-None-Match 优先于 If-Modified-Since
+     */
+    private static boolean notModified(HttpServletRequest request, MediaFileCache.MediaFile file) {
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                String trimmed = tag.trim();
+                if (trimmed.equals("*") || trimmed.equals(file.getEtag()) || trimmed.equals("W/" + file.getEtag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+        // HTTP 日期精确到秒
+        return ifModifiedSince >= 0 && file.getLastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * If-Range 与当前文件一致时才按 Range 返回部分内容
+     */
+    private static boolean ifRangeMatches(HttpServletRequest request, MediaFileCache.MediaFile file) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(file.getEtag());
+        }
+        long date = dateHeader(request, HttpHeaders.IF_RANGE);
+        return date >= 0 && file.getLastModified() / 1000 == date / 1000;
+    }
+
+    private static long dateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 解析单段 Range
+     * @return {start, end}；无法识别或多段时返回空数组（按完整内容返回）；范围不可满足时返回null
+     */
+    static long[] parseRange(String header, long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // bytes=-n 表示最后 n 个字节
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+            if (start < 0 || start >= size || end < start) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    private static String cacheControl(Path path) {
+        return CONTENT_NAMED.matcher(path.getFileName().toString()).matches() ? IMMUTABLE_CACHE : DEFAULT_CACHE;
+    }
+
+    private static String contentType(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+            return "image/jpeg";
+        }
+        if (name.endsWith(".png")) {
+            return "image/png";
+        }
+        if (name.endsWith(".gif")) {
+            return "image/gif";
+        }
+        if (name.endsWith(".webp")) {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+}
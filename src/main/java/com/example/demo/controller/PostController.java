@@ -6,15 +6,22 @@ import com.example.demo.dto.PageResponse;
 import com.example.demo.entity.Comment;
 import com.example.demo.entity.Post;
 import com.example.demo.entity.PostImage;
+import com.example.demo.entity.PostImageVariant;
 import com.example.demo.entity.User;
-import com.example.demo.repository.PostImageRepository;
+import com.example.demo.repository.PostImageVariantRepository;
 import com.example.demo.repository.PostRepository;
 import com.example.demo.repository.UserRepository;
 import com.example.demo.service.CommentService;
+import com.example.demo.service.ImageStorageService;
+import com.example.demo.service.PostImageCache;
 import com.example.demo.service.PostService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -27,11 +34,14 @@ import java.util.Map;
 @RequestMapping("/api/post")
 public class PostController {
 
+    // 每条动态最多的图片数量
+    private static final int MAX_IMAGES_PER_POST = PostService.MAX_IMAGES_PER_POST;
+
     @Autowired
     private PostService postService;
 
     @Autowired
-    private PostImageRepository postImageRepository;
+    private PostImageCache postImageCache;
 
     @Autowired
     private UserRepository userRepository;
@@ -42,6 +52,12 @@ public class PostController {
     @Autowired
     private CommentService commentService;
 
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private PostImageVariantRepository postImageVariantRepository;
+
     /**
      * 发布动态接口
      * @param userId 用户ID
@@ -64,7 +80,7 @@ public class PostController {
             Post post = postService.createPost(userId, content, imagePaths);
 
             // 查询动态的图片列表
-            List<PostImage> postImages = postImageRepository.findByPostId(post.getId());
+            List<PostImage> postImages = postImageCache.get(post.getId());
             List<String> savedImagePaths = new ArrayList<>();
             for (PostImage postImage : postImages) {
                 savedImagePaths.add(postImage.getImagePath());
@@ -78,6 +94,52 @@ public class PostController {
             postData.put("like", post.getLike());
             postData.put("isLike", false); // 新发布的帖子默认未点赞
             postData.put("images", savedImagePaths);
+            postData.put("imageItems", buildImageItems(postImages, loadVariants(postImages)));
+            postData.put("createTime", post.getCreateTime());
+
+            return ApiResponse.success("发布成功", postData);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("发布失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 发布带图片的动态接口（图片随请求一起上传，全部处理成功后才创建动态）
+     * @param userId 用户ID
+     * @param content 动态内容
+     * @param files 图片文件（1-9张，支持 JPEG、PNG、GIF、WEBP）
+     * @return 发布结果
+     */
+    @PostMapping("/create-with-images")
+    public ApiResponse<Map<String, Object>> createPostWithImages(
+            @RequestParam("userId") Long userId,
+            @RequestParam("content") String content,
+            @RequestParam("files") List<MultipartFile> files) {
+        try {
+            // 验证内容不能为空
+            if (content == null || content.trim().isEmpty()) {
+                return ApiResponse.error(400, "动态内容不能为空");
+            }
+
+            Post post = postService.createPostWithImages(userId, content, files);
+
+            List<PostImage> postImages = postImageCache.get(post.getId());
+            List<String> savedImagePaths = new ArrayList<>();
+            for (PostImage postImage : postImages) {
+                savedImagePaths.add(postImage.getImagePath());
+            }
+
+            // 构建返回数据
+            Map<String, Object> postData = new HashMap<>();
+            postData.put("id", post.getId());
+            postData.put("userId", post.getUserId());
+            postData.put("content", post.getContent());
+            postData.put("like", post.getLike());
+            postData.put("isLike", false);
+            postData.put("images", savedImagePaths);
+            postData.put("imageItems", buildImageItems(postImages, loadVariants(postImages)));
             postData.put("createTime", post.getCreateTime());
 
             return ApiResponse.success("发布成功", postData);
@@ -88,6 +150,61 @@ public class PostController {
         }
     }
 
+    /**
+     * 上传动态图片接口（multipart，返回的路径用于发布动态的 imagePaths）
+     * 上传内容先由容器写入临时文件，再移动到按内容寻址的位置
+     * @param files 图片文件（最多9张，支持 JPEG、PNG、GIF、WEBP）
+     * @return 图片相对路径列表
+     */
+    @PostMapping(value = "/images/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ApiResponse<Map<String, Object>> uploadImages(@RequestParam("files") List<MultipartFile> files) {
+        try {
+            if (files == null || files.isEmpty()) {
+                return ApiResponse.error(400, "请选择要上传的图片");
+            }
+            if (files.size() > MAX_IMAGES_PER_POST) {
+                return ApiResponse.error(400, "单次最多上传" + MAX_IMAGES_PER_POST + "张图片");
+            }
+
+            // 相同内容的图片可能被其他动态共用，失败时不删除已保存的图片，未被引用的由清理任务回收
+            List<String> storedPaths = new ArrayList<>();
+            for (MultipartFile file : files) {
+                storedPaths.add(imageStorageService.storePostImage(file));
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("imagePaths", storedPaths);
+            return ApiResponse.success("上传成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 流式上传单张动态图片接口（请求体即图片内容）
+     * 从请求流边读边写入磁盘，读到文件头即检查类型，超过大小上限时立即拒绝，不必等整个请求上传完
+     * @return 图片相对路径列表（只有一项）
+     */
+    @PostMapping(value = "/images/upload", consumes = {MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE,
+            MediaType.IMAGE_GIF_VALUE, "image/webp", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ApiResponse<Map<String, Object>> uploadImageStream(HttpServletRequest request) {
+        try (InputStream inputStream = request.getInputStream()) {
+            String storedPath = imageStorageService.storePostImage(inputStream, request.getContentLengthLong());
+
+            List<String> storedPaths = new ArrayList<>();
+            storedPaths.add(storedPath);
+            Map<String, Object> result = new HashMap<>();
+            result.put("imagePaths", storedPaths);
+            return ApiResponse.success("上传成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("上传失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 获取动态列表接口（分页，好友优先）
      * @param userId 当前用户ID
@@ -111,14 +228,22 @@ public class PostController {
             }
             java.util.Set<Long> likedPostIds = postRepository.findLikedPostIds(postIds, userId);
 
+            // 批量获取当前页所有动态的图片，并一次查询这些图片的缩略图
+            Map<Long, List<PostImage>> imagesByPost = postImageCache.getAll(postIds);
+            List<PostImage> pageImages = new ArrayList<>();
+            for (List<PostImage> postImages : imagesByPost.values()) {
+                pageImages.addAll(postImages);
+            }
+            Map<Long, List<PostImageVariant>> variants = loadVariants(pageImages);
+
             // 构建返回数据（包含用户信息和图片）
             List<Map<String, Object>> postList = new ArrayList<>();
             for (Post post : pageResponse.getContent()) {
                 // 查询用户信息
                 User user = userRepository.findById(post.getUserId()).orElse(null);
                 
-                // 查询图片列表
-                List<PostImage> postImages = postImageRepository.findByPostId(post.getId());
+                // 图片列表
+                List<PostImage> postImages = imagesByPost.get(post.getId());
                 List<String> imagePaths = new ArrayList<>();
                 for (PostImage postImage : postImages) {
                     imagePaths.add(postImage.getImagePath());
@@ -131,6 +256,7 @@ public class PostController {
                 postData.put("like", post.getLike());
                 postData.put("isLike", likedPostIds.contains(post.getId())); // 添加是否点赞字段
                 postData.put("images", imagePaths);
+                postData.put("imageItems", buildImageItems(postImages, variants));
                 postData.put("createTime", post.getCreateTime());
                 
                 // 添加用户信息
@@ -180,7 +306,7 @@ public class PostController {
             User user = userRepository.findById(post.getUserId()).orElse(null);
 
             // 查询图片列表
-            List<PostImage> postImages = postImageRepository.findByPostId(post.getId());
+            List<PostImage> postImages = postImageCache.get(post.getId());
             List<String> imagePaths = new ArrayList<>();
             for (PostImage postImage : postImages) {
                 imagePaths.add(postImage.getImagePath());
@@ -194,6 +320,7 @@ public class PostController {
             postData.put("like", post.getLike());
             postData.put("isLike", true); // 点赞后设置为true
             postData.put("images", imagePaths);
+            postData.put("imageItems", buildImageItems(postImages, loadVariants(postImages)));
             postData.put("createTime", post.getCreateTime());
 
             // 添加作者信息
@@ -231,7 +358,7 @@ public class PostController {
             User user = userRepository.findById(post.getUserId()).orElse(null);
 
             // 查询图片列表
-            List<PostImage> postImages = postImageRepository.findByPostId(post.getId());
+            List<PostImage> postImages = postImageCache.get(post.getId());
             List<String> imagePaths = new ArrayList<>();
             for (PostImage postImage : postImages) {
                 imagePaths.add(postImage.getImagePath());
@@ -245,6 +372,7 @@ public class PostController {
             postData.put("like", post.getLike());
             postData.put("isLike", false); // 取消点赞后设置为false
             postData.put("images", imagePaths);
+            postData.put("imageItems", buildImageItems(postImages, loadVariants(postImages)));
             postData.put("createTime", post.getCreateTime());
 
             // 添加作者信息
@@ -448,5 +576,54 @@ public class PostController {
             return ApiResponse.error("取消点赞失败：" + e.getMessage());
         }
     }
-}
 
+    /**
+     * 一次查询加载图片的缩略图，按图片ID分组（每组按尺寸升序）
+     */
+    private Map<Long, List<PostImageVariant>> loadVariants(List<PostImage> postImages) {
+        List<Long> imageIds = new ArrayList<>();
+        for (PostImage postImage : postImages) {
+            imageIds.add(postImage.getId());
+        }
+        Map<Long, List<PostImageVariant>> variants = new HashMap<>();
+        for (PostImageVariant variant : postImageVariantRepository.findByPostImageIds(imageIds)) {
+            variants.computeIfAbsent(variant.getPostImageId(), key -> new ArrayList<>()).add(variant);
+        }
+        return variants;
+    }
+
+    /**
+     * 构建图片数据：thumbnail 用于列表小图，display 用于大图预览，还没生成缩略图时都为原图
+     */
+    private List<Map<String, Object>> buildImageItems(List<PostImage> postImages, Map<Long, List<PostImageVariant>> variants) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (PostImage postImage : postImages) {
+            List<PostImageVariant> imageVariants = variants.getOrDefault(postImage.getId(), new ArrayList<>());
+
+            List<Map<String, Object>> variantList = new ArrayList<>();
+            for (PostImageVariant variant : imageVariants) {
+                Map<String, Object> variantData = new HashMap<>();
+                variantData.put("maxEdge", variant.getMaxEdge());
+                variantData.put("path", variant.getImagePath());
+                variantData.put("width", variant.getWidth());
+                variantData.put("height", variant.getHeight());
+                variantList.add(variantData);
+            }
+
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", postImage.getId());
+            item.put("path", postImage.getImagePath());
+            // 尺寸和占位图在后台处理完成前为null
+            item.put("width", postImage.getWidth());
+            item.put("height", postImage.getHeight());
+            item.put("placeholder", postImage.getPlaceholder());
+            item.put("thumbnail", imageVariants.isEmpty()
+                    ? postImage.getImagePath() : imageVariants.get(0).getImagePath());
+            item.put("display", imageVariants.isEmpty()
+                    ? postImage.getImagePath() : imageVariants.get(imageVariants.size() - 1).getImagePath());
+            item.put("variants", variantList);
+            items.add(item);
+        }
+        return items;
+    }
+}
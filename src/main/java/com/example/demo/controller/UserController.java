@@ -4,15 +4,31 @@ import com.example.demo.dto.ApiResponse;
 import com.example.demo.dto.ChangePasswordRequest;
 import com.example.demo.dto.ChangeUsernameRequest;
 import com.example.demo.dto.LoginRequest;
+import com.example.demo.dto.PageRequest;
+import com.example.demo.dto.PageResponse;
 import com.example.demo.dto.RegisterRequest;
 import com.example.demo.dto.UpdateUserInfoRequest;
 import com.example.demo.entity.User;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.service.AvatarService;
+import com.example.demo.service.PresenceService;
+import com.example.demo.service.UserSearchService;
+import com.example.demo.service.UsernameAvailabilityService;
 import com.example.demo.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -25,6 +41,21 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UsernameAvailabilityService usernameAvailabilityService;
+
+    @Autowired
+    private AvatarService avatarService;
+
     /**
      * 用户注册接口
      * @param request 注册请求
@@ -136,6 +167,64 @@ public class UserController {
         }
     }
 
+    /**
+     * 上传头像接口（居中裁剪为正方形并生成多个尺寸）
+     * @param userId 用户ID
+     * @param file 头像图片（支持 JPEG、PNG、GIF）
+     * @return 更新后的用户信息
+     */
+    @PostMapping("/avatar/upload")
+    public ApiResponse<Map<String, Object>> uploadAvatar(
+            @RequestParam("userId") Long userId,
+            @RequestParam("file") MultipartFile file) {
+        try {
+            User user = avatarService.uploadAvatar(userId, file);
+
+            // 构建返回数据（不返回密码）
+            Map<String, Object> userData = buildUserData(user);
+
+            return ApiResponse.success("头像上传成功", userData);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("头像上传失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 获取用户头像图片
+     * @param userId 用户ID
+     * @param size 尺寸（默认96，返回不小于该值的最小尺寸）
+     * @return JPEG 图片；头像不是上传生成的（例如外部链接）时重定向到头像地址
+     */
+    @GetMapping("/{userId}/avatar")
+    public ResponseEntity<byte[]> getAvatar(
+            @PathVariable("userId") Long userId,
+            @RequestParam(value = "size", defaultValue = "96") Integer size) {
+        try {
+            // 用户的 avatar 字段和头像内容都有缓存，命中时不查询数据库
+            String avatar = avatarService.findAvatar(userId);
+            if (avatar == null) {
+                return ResponseEntity.notFound().build();
+            }
+            byte[] content = avatarService.readAvatar(avatar, size);
+            if (content == null) {
+                if (avatar.startsWith("http://") || avatar.startsWith("https://")) {
+                    return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(avatar)).build();
+                }
+                return ResponseEntity.notFound().build();
+            }
+            // 地址不随头像版本变化，只短时间缓存，过期后用 ETag 校验
+            return ResponseEntity.ok()
+                    .contentType(MediaType.IMAGE_JPEG)
+                    .cacheControl(CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic())
+                    .eTag(avatarService.sizedPath(avatar, size))
+                    .body(content);
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
     /**
      * 更新用户信息接口（统一接口，可更新姓名、头像、个性签名、性别）
      * 如果前端没有传值就保持不变，传了就改
@@ -182,6 +271,111 @@ public class UserController {
         }
     }
 
+    /**
+     * 用户心跳接口（客户端定时调用以保持在线状态）
+     * @param userId 用户ID
+     * @return 心跳结果
+     */
+    @PostMapping("/heartbeat")
+    public ApiResponse<Map<String, Object>> heartbeat(@RequestParam("userId") Long userId) {
+        try {
+            userService.heartbeat(userId);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("online", true);
+            result.put("timeoutSeconds", presenceService.getTimeoutSeconds());
+            return ApiResponse.success("心跳成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("心跳失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量查询在线状态接口（从内存中查询，不访问数据库）
+     * @param userIds 用户ID列表
+     * @return 其中在线的用户ID列表
+     */
+    @GetMapping("/online")
+    public ApiResponse<Map<String, Object>> getOnlineUsers(@RequestParam("userIds") List<Long> userIds) {
+        try {
+            Map<String, Object> result = new HashMap<>();
+            result.put("onlineUserIds", new ArrayList<>(presenceService.filterOnline(userIds)));
+            return ApiResponse.success("查询成功", result);
+        } catch (Exception e) {
+            return ApiResponse.error("查询失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 检查用户名是否可用接口（注册页输入时调用）
+     * @param username 用户名
+     * @return 是否可用
+     */
+    @GetMapping("/username-available")
+    public ApiResponse<Map<String, Object>> checkUsernameAvailable(@RequestParam("username") String username) {
+        try {
+            if (username == null || username.trim().isEmpty()) {
+                return ApiResponse.error(400, "用户名不能为空");
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("username", username);
+            result.put("available", usernameAvailabilityService.isAvailable(username));
+            return ApiResponse.success("查询成功", result);
+        } catch (Exception e) {
+            return ApiResponse.error("查询失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 搜索用户接口（按用户名、个性签名、地区搜索，按相关度排序）
+     * @param q 搜索关键字
+     * @param page 页码（从1开始，默认1）
+     * @param size 每页大小（默认20）
+     * @return 用户列表
+     */
+    @GetMapping("/search")
+    public ApiResponse<Map<String, Object>> searchUsers(
+            @RequestParam("q") String q,
+            @RequestParam(value = "page", defaultValue = "1") Integer page,
+            @RequestParam(value = "size", defaultValue = "20") Integer size) {
+        try {
+            PageRequest pageRequest = new PageRequest(page, Math.min(size, 100));
+            PageResponse<Long> pageResponse = userSearchService.search(q, pageRequest);
+
+            // 一次查询补全当前页的用户信息
+            Map<Long, User> users = new HashMap<>();
+            for (User user : userRepository.findByIds(pageResponse.getContent())) {
+                users.put(user.getId(), user);
+            }
+
+            List<Map<String, Object>> userList = new ArrayList<>();
+            for (Long userId : pageResponse.getContent()) {
+                User user = users.get(userId);
+                if (user != null) {
+                    Map<String, Object> userInfo = buildUserInfo(user);
+                    userInfo.put("id", user.getId());
+                    userList.add(userInfo);
+                }
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("content", userList);
+            result.put("page", pageResponse.getPage());
+            result.put("size", pageResponse.getSize());
+            result.put("total", pageResponse.getTotal());
+            result.put("totalPages", pageResponse.getTotalPages());
+
+            return ApiResponse.success("搜索成功", result);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(400, e.getMessage());
+        } catch (Exception e) {
+            return ApiResponse.error("搜索失败：" + e.getMessage());
+        }
+    }
+
     /**
      * 获取用户信息接口
      * @param userId 用户ID
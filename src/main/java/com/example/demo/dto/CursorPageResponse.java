@@ -0,0 +1,55 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+/**
+ * 游标分页响应DTO
+ */
+public class CursorPageResponse<T> {
+    private List<T> content;      // 数据列表
+    private Integer size;          // 每页大小
+    private Boolean hasMore;       // 是否还有下一页
+    private String nextCursor;     // 下一页游标（没有下一页时为null）
+
+    public CursorPageResponse() {
+    }
+
+    public CursorPageResponse(List<T> content, Integer size, Boolean hasMore, String nextCursor) {
+        this.content = content;
+        this.size = size;
+        this.hasMore = hasMore;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public Integer getSize() {
+        return size;
+    }
+
+    public void setSize(Integer size) {
+        this.size = size;
+    }
+
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.demo.dto;
+
+import com.example.demo.entity.Friend;
+
+import java.util.List;
+
+/**
+ * 好友列表增量同步响应DTO
+ */
+public class FriendSyncResponse {
+    private Boolean fullSync;              // 是否需要全量拉取好友列表
+    private Long version;                  // 本次同步到的版本号（下次请求的 sinceVersion）
+    private Boolean hasMore;               // 是否还有未返回的变更
+    private List<Friend> upserts;          // 新增或备注变化的好友关系（当前状态）
+    private List<Long> removedFriendIds;   // 已删除的好友ID
+
+    public FriendSyncResponse() {
+    }
+
+    public FriendSyncResponse(Boolean fullSync, Long version, Boolean hasMore, List<Friend> upserts, List<Long> removedFriendIds) {
+        this.fullSync = fullSync;
+        this.version = version;
+        this.hasMore = hasMore;
+        this.upserts = upserts;
+        this.removedFriendIds = removedFriendIds;
+    }
+
+    public Boolean getFullSync() {
+        return fullSync;
+    }
+
+    public void setFullSync(Boolean fullSync) {
+        this.fullSync = fullSync;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Boolean getHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(Boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public List<Friend> getUpserts() {
+        return upserts;
+    }
+
+    public void setUpserts(List<Friend> upserts) {
+        this.upserts = upserts;
+    }
+
+    public List<Long> getRemovedFriendIds() {
+        return removedFriendIds;
+    }
+
+    public void setRemovedFriendIds(List<Long> removedFriendIds) {
+        this.removedFriendIds = removedFriendIds;
+    }
+}
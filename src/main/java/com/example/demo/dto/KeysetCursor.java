@@ -0,0 +1,64 @@
+package com.example.demo.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 游标分页的位置（按 create_time DESC, id DESC 排序时的最后一条记录）
+ * 对客户端是不透明的字符串，客户端只需要原样传回 nextCursor。
+ */
+public class KeysetCursor {
+    private LocalDateTime createTime;
+    private Long id;
+
+    public KeysetCursor() {
+    }
+
+    public KeysetCursor(LocalDateTime createTime, Long id) {
+        this.createTime = createTime;
+        this.id = id;
+    }
+
+    /**
+     * 解析游标字符串（为空时返回null，表示从第一条开始）
+     */
+    public static KeysetCursor parse(String cursor) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf('|');
+            return new KeysetCursor(
+                    LocalDateTime.parse(decoded.substring(0, separator)),
+                    Long.parseLong(decoded.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new RuntimeException("无效的分页游标");
+        }
+    }
+
+    /**
+     * 编码为游标字符串
+     */
+    public String encode() {
+        String raw = createTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public LocalDateTime getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(LocalDateTime createTime) {
+        this.createTime = createTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+}
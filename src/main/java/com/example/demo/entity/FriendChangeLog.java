@@ -0,0 +1,89 @@
+package com.example.demo.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * 好友关系变更记录实体类
+ * 版本号按用户单独分配（friend_change_version 计数器），与变更在同一事务中递增，
+ * 同一用户的版本号按提交顺序连续递增；自增ID只用于全表按写入顺序遍历
+ */
+public class FriendChangeLog {
+    public static final String OP_ADD = "add";
+    public static final String OP_REMOVE = "remove";
+    public static final String OP_REMARK = "remark";
+
+    private Long id;
+    private Long version;
+    private Long userId;
+    private Long friendId;
+    private String op;
+    private String remark;
+    private LocalDateTime createTime;
+
+    public FriendChangeLog() {
+    }
+
+    public FriendChangeLog(Long userId, Long friendId, String op, String remark, LocalDateTime createTime) {
+        this.userId = userId;
+        this.friendId = friendId;
+        this.op = op;
+        this.remark = remark;
+        this.createTime = createTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getFriendId() {
+        return friendId;
+    }
+
+    public void setFriendId(Long friendId) {
+        this.friendId = friendId;
+    }
+
+    public String getOp() {
+        return op;
+    }
+
+    public void setOp(String op) {
+        this.op = op;
+    }
+
+    public String getRemark() {
+        return remark;
+    }
+
+    public void setRemark(String remark) {
+        this.remark = remark;
+    }
+
+    public LocalDateTime getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(LocalDateTime createTime) {
+        this.createTime = createTime;
+    }
+}
@@ -10,6 +10,10 @@ public class PostImage {
     private Long postId;
     private String imagePath;
     private Integer sortOrder;
+    private Integer width;
+    private Integer height;
+    private String placeholder;
+    private Integer variantAttempts;
     private LocalDateTime createTime;
 
     public PostImage() {
@@ -55,6 +59,38 @@ public class PostImage {
         this.sortOrder = sortOrder;
     }
 
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    public void setPlaceholder(String placeholder) {
+        this.placeholder = placeholder;
+    }
+
+    public Integer getVariantAttempts() {
+        return variantAttempts;
+    }
+
+    public void setVariantAttempts(Integer variantAttempts) {
+        this.variantAttempts = variantAttempts;
+    }
+
     public LocalDateTime getCreateTime() {
         return createTime;
     }
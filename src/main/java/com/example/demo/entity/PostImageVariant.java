@@ -0,0 +1,96 @@
+package com.example.demo.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * 动态图片缩略图实体类
+ * 每张图片按最长边生成多个尺寸，原图不大于目标尺寸时直接引用原图
+ */
+public class PostImageVariant {
+    private Long id;
+    private Long postImageId;
+    private Integer maxEdge;
+    private String imagePath;
+    private Integer width;
+    private Integer height;
+    private Long fileSize;
+    private LocalDateTime createTime;
+
+    public PostImageVariant() {
+    }
+
+    public PostImageVariant(Long postImageId, Integer maxEdge, String imagePath, Integer width, Integer height,
+                            Long fileSize, LocalDateTime createTime) {
+        this.postImageId = postImageId;
+        this.maxEdge = maxEdge;
+        this.imagePath = imagePath;
+        this.width = width;
+        this.height = height;
+        this.fileSize = fileSize;
+        this.createTime = createTime;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getPostImageId() {
+        return postImageId;
+    }
+
+    public void setPostImageId(Long postImageId) {
+        this.postImageId = postImageId;
+    }
+
+    public Integer getMaxEdge() {
+        return maxEdge;
+    }
+
+    public void setMaxEdge(Integer maxEdge) {
+        this.maxEdge = maxEdge;
+    }
+
+    public String getImagePath() {
+        return imagePath;
+    }
+
+    public void setImagePath(String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public LocalDateTime getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(LocalDateTime createTime) {
+        this.createTime = createTime;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.FriendChangeLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 好友关系变更记录数据访问层
+ */
+@Repository
+public class FriendChangeLogRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 批量保存变更记录（一条多行INSERT，需与好友关系的修改在同一事务中调用）
+     * 先为涉及的每个用户递增版本计数器：计数器行的写锁持有到事务提交，
+     * 同一用户的后一个事务要等前一个提交后才能分配版本号，因此版本号大的变更一定提交得更晚，
+     * 同步时读到某个版本就不会漏掉比它小的版本。
+     */
+    public void saveBatch(List<FriendChangeLog> logs) {
+        if (logs == null || logs.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Long> nextVersions = allocateVersions(logs);
+        for (FriendChangeLog changeLog : logs) {
+            long version = nextVersions.get(changeLog.getUserId());
+            changeLog.setVersion(version);
+            nextVersions.put(changeLog.getUserId(), version + 1);
+        }
+
+        String values = logs.stream()
+                .map(changeLog -> "(?, ?, ?, ?, ?, ?)")
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("");
+        String sql = "INSERT INTO friend_change_log (version, user_id, friend_id, op, remark, create_time) VALUES " + values;
+
+        List<Object> params = new ArrayList<>();
+        for (FriendChangeLog changeLog : logs) {
+            params.add(changeLog.getVersion());
+            params.add(changeLog.getUserId());
+            params.add(changeLog.getFriendId());
+            params.add(changeLog.getOp());
+            params.add(changeLog.getRemark());
+            params.add(changeLog.getCreateTime());
+        }
+        jdbcTemplate.update(sql, params.toArray());
+    }
+
+    /**
+     * 为每个用户递增版本计数器并加锁
+     * @return 用户ID -> 本批变更的第一个版本号
+     */
+    private Map<Long, Long> allocateVersions(List<FriendChangeLog> logs) {
+        // 按用户ID升序加锁，避免并发事务互相等待造成死锁
+        TreeMap<Long, Integer> counts = new TreeMap<>();
+        for (FriendChangeLog changeLog : logs) {
+            counts.merge(changeLog.getUserId(), 1, Integer::sum);
+        }
+
+        String values = counts.keySet().stream()
+                .map(userId -> "(?, ?)")
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("");
+        String upsertSql = "INSERT INTO friend_change_version (user_id, version) VALUES " + values +
+                           " ON DUPLICATE KEY UPDATE version = version + VALUES(version)";
+        List<Object> params = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            params.add(entry.getKey());
+            params.add(entry.getValue());
+        }
+        jdbcTemplate.update(upsertSql, params.toArray());
+
+        // 锁定读取，读到本事务递增后的值（普通读取可能读到事务开始时的快照）
+        String placeholders = counts.keySet().stream()
+                .map(userId -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+        String selectSql = "SELECT user_id, version FROM friend_change_version WHERE user_id IN (" + placeholders + ") FOR UPDATE";
+        Map<Long, Long> firstVersions = new HashMap<>();
+        jdbcTemplate.query(selectSql, (RowCallbackHandler) rs -> {
+            long userId = rs.getLong("user_id");
+            firstVersions.put(userId, rs.getLong("version") - counts.get(userId) + 1);
+        }, counts.keySet().toArray());
+        return firstVersions;
+    }
+
+    /**
+     * 查询用户在指定版本之后的变更记录（按版本升序）
+     */
+    public List<FriendChangeLog> findByUserIdSince(Long userId, Long sinceVersion, int limit) {
+        String sql = "SELECT id, version, user_id as userId, friend_id as friendId, op, remark, create_time as createTime " +
+                     "FROM friend_change_log WHERE user_id = ? AND version > ? ORDER BY version ASC LIMIT ?";
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(FriendChangeLog.class), userId, sinceVersion, limit);
+    }
+
+    /**
+     * 查询用户当前的最新版本号（没有变更记录时返回0）
+     */
+    public long findLatestVersion(Long userId) {
+        String sql = "SELECT COALESCE(MAX(version), 0) FROM friend_change_version WHERE user_id = ?";
+        Long version = jdbcTemplate.queryForObject(sql, Long.class, userId);
+        return version != null ? version : 0L;
+    }
+
+    /**
+     * 查询变更记录表当前的最大ID（空表返回0）
+     */
+    public long findMaxId() {
+        String sql = "SELECT COALESCE(MAX(id), 0) FROM friend_change_log";
+        Long maxId = jdbcTemplate.queryForObject(sql, Long.class);
+        return maxId != null ? maxId : 0L;
+    }
+
+    /**
+     * 流式遍历ID大于指定值的添加、删除记录（按ID升序），用于从快照恢复好友图后对账
+     */
+    public void forEachMembershipChangeAfter(long minId, FriendRepository.EdgeConsumer consumer) {
+        String sql = "SELECT user_id, friend_id FROM friend_change_log WHERE id > ? AND op IN ('add', 'remove') ORDER BY id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // MySQL驱动只有在fetchSize为Integer.MIN_VALUE时才逐行流式读取
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setLong(1, minId);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getLong(2)));
+    }
+}
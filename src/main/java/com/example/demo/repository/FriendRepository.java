@@ -4,14 +4,19 @@ import com.example.demo.entity.Friend;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -45,6 +50,73 @@ public class FriendRepository {
         return friend;
     }
 
+    /**
+     * 批量保存双向好友关系（一条多行INSERT写入每对用户的两个方向）
+     * 多行INSERT返回的自增键不保证与行顺序对应，写入后按 (user_id, friend_id) 查回ID
+     * @param pairs 用户对列表，每项为 {申请者ID, 接收者ID}
+     * @param createTime 成为好友时间
+     * @return 保存的好友关系，顺序为 申请者->接收者、接收者->申请者 交替排列
+     */
+    public List<Friend> saveFriendshipPairs(List<long[]> pairs, LocalDateTime createTime) {
+        List<Friend> friends = new ArrayList<>();
+        if (pairs == null || pairs.isEmpty()) {
+            return friends;
+        }
+
+        for (long[] pair : pairs) {
+            friends.add(new Friend(null, pair[0], pair[1], null, createTime));
+            friends.add(new Friend(null, pair[1], pair[0], null, createTime));
+        }
+
+        String values = friends.stream()
+                .map(friend -> "(?, ?, ?, ?)")
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("");
+        String sql = "INSERT INTO friend (user_id, friend_id, remark, create_time) VALUES " + values;
+
+        List<Object> params = new ArrayList<>();
+        for (Friend friend : friends) {
+            params.add(friend.getUserId());
+            params.add(friend.getFriendId());
+            params.add(friend.getRemark());
+            params.add(friend.getCreateTime());
+        }
+        jdbcTemplate.update(sql, params.toArray());
+
+        Map<String, Long> ids = findIdsByPairs(friends);
+        for (Friend friend : friends) {
+            Long id = ids.get(friend.getUserId() + ":" + friend.getFriendId());
+            if (id == null) {
+                throw new IllegalStateException("好友关系写入后未查到：" + friend.getUserId() + " -> " + friend.getFriendId());
+            }
+            friend.setId(id);
+        }
+        return friends;
+    }
+
+    /**
+     * 按 (user_id, friend_id) 查询好友关系ID
+     * @return "userId:friendId" -> ID
+     */
+    private Map<String, Long> findIdsByPairs(List<Friend> friends) {
+        String placeholders = friends.stream()
+                .map(friend -> "(?, ?)")
+                .reduce((a, b) -> a + ", " + b)
+                .orElse("");
+        String sql = "SELECT id, user_id, friend_id FROM friend WHERE (user_id, friend_id) IN (" + placeholders + ")";
+
+        List<Object> params = new ArrayList<>();
+        for (Friend friend : friends) {
+            params.add(friend.getUserId());
+            params.add(friend.getFriendId());
+        }
+
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs ->
+                ids.put(rs.getLong("user_id") + ":" + rs.getLong("friend_id"), rs.getLong("id")), params.toArray());
+        return ids;
+    }
+
     /**
      * 检查好友关系是否存在
      */
@@ -77,6 +149,72 @@ public class FriendRepository {
         return jdbcTemplate.queryForList(sql, Long.class, userId);
     }
 
+    /**
+     * 在给定用户ID中查找是用户好友的ID（一次IN查询）
+     */
+    public List<Long> findFriendIdsAmong(Long userId, List<Long> candidateIds) {
+        if (candidateIds == null || candidateIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = candidateIds.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT friend_id FROM friend WHERE user_id = ? AND friend_id IN (" + placeholders + ")";
+
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.addAll(candidateIds);
+
+        return jdbcTemplate.queryForList(sql, Long.class, params.toArray());
+    }
+
+    /**
+     * 统计用户的好友数量
+     */
+    public int countByUserId(Long userId) {
+        String sql = "SELECT COUNT(*) FROM friend WHERE user_id = ?";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, userId);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 按 (user_id, friend_id) 顺序流式遍历所有好友关系，用于构建内存好友图
+     */
+    public void forEachEdge(EdgeConsumer consumer) {
+        String sql = "SELECT user_id, friend_id FROM friend ORDER BY user_id, friend_id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // MySQL驱动只有在fetchSize为Integer.MIN_VALUE时才逐行流式读取
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getLong(2)));
+    }
+
+    /**
+     * 流式遍历ID大于指定值的好友关系（按ID升序），用于从快照恢复好友图后补齐新增的关系
+     */
+    public void forEachEdgeAfter(long minId, EdgeConsumer consumer) {
+        String sql = "SELECT user_id, friend_id FROM friend WHERE id > ? ORDER BY id";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setLong(1, minId);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getLong(1), rs.getLong(2)));
+    }
+
+    /**
+     * 查询好友关系表当前的最大ID（空表返回0）
+     */
+    public long findMaxId() {
+        String sql = "SELECT COALESCE(MAX(id), 0) FROM friend";
+        Long maxId = jdbcTemplate.queryForObject(sql, Long.class);
+        return maxId != null ? maxId : 0L;
+    }
+
     /**
      * 根据用户ID查找所有好友关系
      */
@@ -86,6 +224,80 @@ public class FriendRepository {
         return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(Friend.class), userId);
     }
 
+    /**
+     * 根据用户ID和一组好友ID查询好友关系（一次IN查询）
+     */
+    public List<Friend> findByUserIdAndFriendIds(Long userId, List<Long> friendIds) {
+        if (friendIds == null || friendIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = friendIds.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT id, user_id as userId, friend_id as friendId, remark, create_time as createTime " +
+                     "FROM friend WHERE user_id = ? AND friend_id IN (" + placeholders + ")";
+
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.addAll(friendIds);
+
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(Friend.class), params.toArray());
+    }
+
+    /**
+     * 游标分页查询好友关系（按成为好友时间倒序，使用 (user_id, create_time, id) 索引）
+     * @param userId 用户ID
+     * @param cursorTime 上一页最后一条的成为好友时间（为null表示第一页）
+     * @param cursorId 上一页最后一条的ID
+     * @param keyword 备注或用户名前缀（可选）
+     * @param limit 限制数量
+     * @return 好友关系列表
+     */
+    public List<Friend> findPageByUserId(Long userId, LocalDateTime cursorTime, Long cursorId, String keyword, Integer limit) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(
+            "SELECT f.id, f.user_id as userId, f.friend_id as friendId, f.remark, f.create_time as createTime " +
+            "FROM friend f"
+        );
+
+        boolean hasKeyword = keyword != null && !keyword.trim().isEmpty();
+        if (hasKeyword) {
+            sql.append(" JOIN user u ON u.id = f.friend_id");
+        }
+
+        sql.append(" WHERE f.user_id = ?");
+        params.add(userId);
+
+        if (cursorTime != null && cursorId != null) {
+            sql.append(" AND (f.create_time < ? OR (f.create_time = ? AND f.id < ?))");
+            params.add(cursorTime);
+            params.add(cursorTime);
+            params.add(cursorId);
+        }
+
+        if (hasKeyword) {
+            String prefix = escapeLike(keyword.trim()) + "%";
+            sql.append(" AND (f.remark LIKE ? OR u.username LIKE ?)");
+            params.add(prefix);
+            params.add(prefix);
+        }
+
+        sql.append(" ORDER BY f.create_time DESC, f.id DESC LIMIT ?");
+        params.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), new BeanPropertyRowMapper<>(Friend.class), params.toArray());
+    }
+
+    /**
+     * 转义 LIKE 通配符
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
     /**
      * 更新好友备注
      */
@@ -111,5 +323,13 @@ public class FriendRepository {
         // 删除 friend_id -> user_id 的关系（如果存在）
         deleteByUserIdAndFriendId(friendId, userId);
     }
+
+    /**
+     * 好友关系回调（避免装箱）
+     */
+    @FunctionalInterface
+    public interface EdgeConsumer {
+        void accept(long userId, long friendId);
+    }
 }
 
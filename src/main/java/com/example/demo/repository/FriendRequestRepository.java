@@ -11,6 +11,7 @@ import org.springframework.stereotype.Repository;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -62,12 +63,77 @@ public class FriendRequestRepository {
     }
 
     /**
-     * 根据接收者ID查找待处理的好友申请列表
+     * 根据ID查找好友申请并加行锁（需在事务中调用）
      */
-    public List<FriendRequest> findPendingByReceiverId(Long receiverId) {
+    public Optional<FriendRequest> findByIdForUpdate(Long id) {
         String sql = "SELECT id, requester_id as requesterId, receiver_id as receiverId, status, create_time as createTime, update_time as updateTime " +
-                     "FROM friend_request WHERE receiver_id = ? AND status = 'pending' ORDER BY create_time DESC";
-        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(FriendRequest.class), receiverId);
+                     "FROM friend_request WHERE id = ? FOR UPDATE";
+        try {
+            FriendRequest request = jdbcTemplate.queryForObject(sql,
+                new BeanPropertyRowMapper<>(FriendRequest.class), id);
+            return Optional.ofNullable(request);
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * 根据ID列表查找发给指定接收者的待处理申请并加行锁（需在事务中调用）
+     */
+    public List<FriendRequest> findPendingByIdsForUpdate(List<Long> ids, Long receiverId) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = ids.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT id, requester_id as requesterId, receiver_id as receiverId, status, create_time as createTime, update_time as updateTime " +
+                     "FROM friend_request WHERE id IN (" + placeholders + ") AND receiver_id = ? AND status = 'pending' ORDER BY id FOR UPDATE";
+
+        List<Object> params = new ArrayList<>(ids);
+        params.add(receiverId);
+
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(FriendRequest.class), params.toArray());
+    }
+
+    /**
+     * 游标分页查询待处理的好友申请（按申请时间倒序，使用 (receiver_id, status, create_time, id) 索引）
+     * @param receiverId 接收者ID
+     * @param cursorTime 上一页最后一条的申请时间（为null表示第一页）
+     * @param cursorId 上一页最后一条的ID
+     * @param limit 限制数量
+     */
+    public List<FriendRequest> findPendingPageByReceiverId(Long receiverId, LocalDateTime cursorTime, Long cursorId, Integer limit) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(
+            "SELECT id, requester_id as requesterId, receiver_id as receiverId, status, create_time as createTime, update_time as updateTime " +
+            "FROM friend_request WHERE receiver_id = ? AND status = 'pending'"
+        );
+        params.add(receiverId);
+
+        if (cursorTime != null && cursorId != null) {
+            sql.append(" AND (create_time < ? OR (create_time = ? AND id < ?))");
+            params.add(cursorTime);
+            params.add(cursorTime);
+            params.add(cursorId);
+        }
+
+        sql.append(" ORDER BY create_time DESC, id DESC LIMIT ?");
+        params.add(limit);
+
+        return jdbcTemplate.query(sql.toString(), new BeanPropertyRowMapper<>(FriendRequest.class), params.toArray());
+    }
+
+    /**
+     * 统计接收者待处理的好友申请数量
+     */
+    public int countPendingByReceiverId(Long receiverId) {
+        String sql = "SELECT COUNT(*) FROM friend_request WHERE receiver_id = ? AND status = 'pending'";
+        Integer count = jdbcTemplate.queryForObject(sql, Integer.class, receiverId);
+        return count != null ? count : 0;
     }
 
     /**
@@ -94,6 +160,35 @@ public class FriendRequestRepository {
         return count != null && count > 0;
     }
 
+    /**
+     * 查找用户与一组用户之间双向的待处理申请（UNION ALL 合并为一次查询）
+     * 用户发出的申请走 uk_requester_receiver(requester_id, receiver_id) 的等值查找；
+     * 用户收到的申请走 idx_receiver_status_time(receiver_id, status, ...) 定位该用户待处理的申请，再按 requester_id 过滤。
+     */
+    public List<FriendRequest> findPendingBetween(Long userId, List<Long> otherIds) {
+        if (otherIds == null || otherIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = otherIds.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String columns = "SELECT id, requester_id as requesterId, receiver_id as receiverId, status, create_time as createTime, update_time as updateTime FROM friend_request ";
+        String sql = columns + "WHERE requester_id = ? AND receiver_id IN (" + placeholders + ") AND status = 'pending' " +
+                     "UNION ALL " +
+                     columns + "WHERE receiver_id = ? AND requester_id IN (" + placeholders + ") AND status = 'pending'";
+
+        List<Object> params = new ArrayList<>();
+        params.add(userId);
+        params.addAll(otherIds);
+        params.add(userId);
+        params.addAll(otherIds);
+
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(FriendRequest.class), params.toArray());
+    }
+
     /**
      * 更新申请状态
      */
@@ -102,12 +197,51 @@ public class FriendRequestRepository {
         jdbcTemplate.update(sql, status, LocalDateTime.now(), id);
     }
 
+    /**
+     * 批量更新申请状态
+     */
+    public void updateStatusByIds(List<Long> ids, String status) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+
+        String placeholders = ids.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "UPDATE friend_request SET status = ?, update_time = ? WHERE id IN (" + placeholders + ")";
+
+        List<Object> params = new ArrayList<>();
+        params.add(status);
+        params.add(LocalDateTime.now());
+        params.addAll(ids);
+        jdbcTemplate.update(sql, params.toArray());
+    }
+
     /**
      * 删除申请记录
      */
-    public void deleteById(Long id) {
+    public int deleteById(Long id) {
         String sql = "DELETE FROM friend_request WHERE id = ?";
-        jdbcTemplate.update(sql, id);
+        return jdbcTemplate.update(sql, id);
+    }
+
+    /**
+     * 批量删除申请记录
+     */
+    public void deleteByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+
+        String placeholders = ids.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "DELETE FROM friend_request WHERE id IN (" + placeholders + ")";
+        jdbcTemplate.update(sql, ids.toArray());
     }
 }
 
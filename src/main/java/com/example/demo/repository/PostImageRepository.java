@@ -10,16 +10,26 @@ package com.example.demo.repository;
 
 import com.example.demo.entity.PostImage;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * 动态图片数据访问层
@@ -53,27 +63,200 @@ public class PostImageRepository {
     }
 
     /**
-     * 批量保存图片记录
+     * 批量保存图片记录（保存后回填每条记录的ID，已有尺寸信息时一并保存）
      */
     public void saveBatch(List<PostImage> postImages) {
-        String sql = "INSERT INTO post_image (post_id, image_path, sort_order, create_time) VALUES (?, ?, ?, ?)";
-        
-        jdbcTemplate.batchUpdate(sql, postImages, postImages.size(),
-            (ps, postImage) -> {
-                ps.setLong(1, postImage.getPostId());
-                ps.setString(2, postImage.getImagePath());
-                ps.setInt(3, postImage.getSortOrder() != null ? postImage.getSortOrder() : 0);
-                ps.setObject(4, postImage.getCreateTime() != null ? postImage.getCreateTime() : LocalDateTime.now());
-            });
+        String sql = "INSERT INTO post_image (post_id, image_path, sort_order, width, height, placeholder, create_time) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS),
+            new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    PostImage postImage = postImages.get(i);
+                    ps.setLong(1, postImage.getPostId());
+                    ps.setString(2, postImage.getImagePath());
+                    ps.setInt(3, postImage.getSortOrder() != null ? postImage.getSortOrder() : 0);
+                    ps.setObject(4, postImage.getWidth());
+                    ps.setObject(5, postImage.getHeight());
+                    ps.setString(6, postImage.getPlaceholder());
+                    ps.setObject(7, postImage.getCreateTime() != null ? postImage.getCreateTime() : LocalDateTime.now());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return postImages.size();
+                }
+            }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        for (int i = 0; i < postImages.size() && i < keys.size(); i++) {
+            Object key = keys.get(i).values().iterator().next();
+            postImages.get(i).setId(((Number) key).longValue());
+        }
+    }
+
+    /**
+     * 查找ID大于指定值且还没有生成缩略图或尺寸信息的图片（按ID升序），失败次数达到上限的图片不再返回
+     */
+    public List<PostImage> findWithoutVariants(Long afterId, Integer maxAttempts, Integer limit) {
+        String sql = "SELECT pi.id, pi.post_id as postId, pi.image_path as imagePath, pi.sort_order as sortOrder, " +
+                     "pi.width, pi.height, pi.placeholder, pi.variant_attempts as variantAttempts, " +
+                     "pi.create_time as createTime " +
+                     "FROM post_image pi WHERE pi.id > ? AND pi.variant_attempts < ? " +
+                     "AND (pi.width IS NULL OR NOT EXISTS (SELECT 1 FROM post_image_variant v WHERE v.post_image_id = pi.id)) " +
+                     "ORDER BY pi.id ASC LIMIT ?";
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(PostImage.class), afterId, maxAttempts, limit);
+    }
+
+    /**
+     * 缩略图生成失败次数加一
+     * @return 加一后的失败次数（记录不存在时为null）
+     */
+    public Integer incrementVariantAttempts(Long id) {
+        jdbcTemplate.update("UPDATE post_image SET variant_attempts = variant_attempts + 1 WHERE id = ?", id);
+        List<Integer> attempts = jdbcTemplate.queryForList(
+                "SELECT variant_attempts FROM post_image WHERE id = ?", Integer.class, id);
+        return attempts.isEmpty() ? null : attempts.get(0);
+    }
+
+    /**
+     * 更新图片尺寸和模糊占位图
+     */
+    public void updateMetadata(Long id, Integer width, Integer height, String placeholder) {
+        String sql = "UPDATE post_image SET width = ?, height = ?, placeholder = ? WHERE id = ?";
+        jdbcTemplate.update(sql, width, height, placeholder, id);
+    }
+
+    /**
+     * 查询图片二进制数据的长度，记录不存在或没有二进制数据时返回null
+     */
+    public Long findImageDataLength(Long id) {
+        String sql = "SELECT LENGTH(image_data) FROM post_image WHERE id = ? AND image_data IS NOT NULL";
+        List<Long> lengths = jdbcTemplate.queryForList(sql, Long.class, id);
+        return lengths.isEmpty() ? null : lengths.get(0);
+    }
+
+    /**
+     * 把图片二进制数据的一段写入输出流
+     * MySQL 驱动读取一行时会把整列读入内存，因此按段用 SUBSTRING 读取，每次只占用一段的内存
+     * @param offset 起始位置（从0开始）
+     * @param length 读取长度
+     * @return 实际写入的字节数
+     */
+    public long copyImageDataChunk(Long id, long offset, int length, OutputStream out) {
+        String sql = "SELECT SUBSTRING(image_data, ?, ?) FROM post_image WHERE id = ?";
+        Long copied = jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(1);
+            ps.setLong(1, offset + 1);
+            ps.setInt(2, length);
+            ps.setLong(3, id);
+            return ps;
+        }, rs -> {
+            if (!rs.next()) {
+                return 0L;
+            }
+            try (InputStream in = rs.getBinaryStream(1)) {
+                return in != null ? in.transferTo(out) : 0L;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return copied != null ? copied : 0L;
+    }
+
+    /**
+     * 查找ID大于指定值且仍保存二进制数据的图片ID（按ID升序）
+     */
+    public List<Long> findIdsWithImageData(Long afterId, Integer limit) {
+        String sql = "SELECT id FROM post_image WHERE id > ? AND image_data IS NOT NULL ORDER BY id ASC LIMIT ?";
+        return jdbcTemplate.queryForList(sql, Long.class, afterId, limit);
+    }
+
+    /**
+     * 二进制数据迁移到文件后更新图片路径并清空二进制数据
+     * @return 更新的行数（数据已被其他迁移任务处理时为0）
+     */
+    public int moveImageDataToFile(Long id, String imagePath) {
+        String sql = "UPDATE post_image SET image_path = ?, image_data = NULL WHERE id = ? AND image_data IS NOT NULL";
+        return jdbcTemplate.update(sql, imagePath, id);
     }
 
     /**
      * 根据动态ID查找所有图片
      */
     public List<PostImage> findByPostId(Long postId) {
-        String sql = "SELECT id, post_id as postId, image_path as imagePath, sort_order as sortOrder, create_time as createTime " +
+        String sql = "SELECT id, post_id as postId, image_path as imagePath, sort_order as sortOrder, " +
+                     "width, height, placeholder, variant_attempts as variantAttempts, create_time as createTime " +
                      "FROM post_image WHERE post_id = ? ORDER BY sort_order ASC";
         return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(PostImage.class), postId);
     }
-}
 
+    /**
+     * 根据动态ID列表批量查找图片（按动态ID、排序升序）
+     */
+    public List<PostImage> findByPostIds(List<Long> postIds) {
+        if (postIds == null || postIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = postIds.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT id, post_id as postId, image_path as imagePath, sort_order as sortOrder, " +
+                     "width, height, placeholder, variant_attempts as variantAttempts, create_time as createTime " +
+                     "FROM post_image WHERE post_id IN (" + placeholders + ") ORDER BY post_id, sort_order ASC";
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(PostImage.class), postIds.toArray());
+    }
+
+    /**
+     * 查找ID大于指定值且路径可能不是规范形式的图片（不以 rootPrefix 开头，或含有 ./、//、反斜杠），按ID升序
+     * 仍保存二进制数据的图片不按路径访问，不返回
+     */
+    public List<PostImage> findNonCanonicalPaths(Long afterId, String rootPrefix, Integer limit) {
+        String sql = "SELECT id, post_id as postId, image_path as imagePath FROM post_image " +
+                     "WHERE id > ? AND image_data IS NULL AND (image_path NOT LIKE CONCAT(?, '%') " +
+                     "OR image_path LIKE '%./%' OR image_path LIKE '%//%' OR INSTR(image_path, CHAR(92)) > 0) " +
+                     "ORDER BY id ASC LIMIT ?";
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(PostImage.class), afterId, rootPrefix, limit);
+    }
+
+    /**
+     * 批量修改图片路径
+     * @param imagePaths 图片ID -> 新路径
+     */
+    public void updateImagePaths(Map<Long, String> imagePaths) {
+        if (imagePaths == null || imagePaths.isEmpty()) {
+            return;
+        }
+
+        String sql = "UPDATE post_image SET image_path = ? WHERE id = ?";
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : imagePaths.entrySet()) {
+            batchArgs.add(new Object[]{entry.getValue(), entry.getKey()});
+        }
+        jdbcTemplate.batchUpdate(sql, batchArgs);
+    }
+
+    /**
+     * 查询给定路径中仍被动态图片引用的路径
+     */
+    public Set<String> findReferencedPaths(List<String> imagePaths) {
+        if (imagePaths == null || imagePaths.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        String placeholders = imagePaths.stream()
+                .map(path -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT DISTINCT image_path FROM post_image WHERE image_path IN (" + placeholders + ")";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, imagePaths.toArray()));
+    }
+}
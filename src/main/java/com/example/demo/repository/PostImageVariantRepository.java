@@ -0,0 +1,114 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.PostImageVariant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 动态图片缩略图数据访问层
+ */
+@Repository
+public class PostImageVariantRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * 批量保存缩略图记录（同一图片同一尺寸已存在时覆盖）
+     */
+    public void saveOrUpdateBatch(List<PostImageVariant> variants) {
+        if (variants == null || variants.isEmpty()) {
+            return;
+        }
+
+        String sql = "INSERT INTO post_image_variant (post_image_id, max_edge, image_path, width, height, file_size, create_time) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?) " +
+                     "ON DUPLICATE KEY UPDATE image_path = VALUES(image_path), width = VALUES(width), " +
+                     "height = VALUES(height), file_size = VALUES(file_size)";
+
+        jdbcTemplate.batchUpdate(sql, variants, variants.size(),
+            (ps, variant) -> {
+                ps.setLong(1, variant.getPostImageId());
+                ps.setInt(2, variant.getMaxEdge());
+                ps.setString(3, variant.getImagePath());
+                ps.setInt(4, variant.getWidth());
+                ps.setInt(5, variant.getHeight());
+                ps.setLong(6, variant.getFileSize() != null ? variant.getFileSize() : 0L);
+                ps.setObject(7, variant.getCreateTime() != null ? variant.getCreateTime() : LocalDateTime.now());
+            });
+    }
+
+    /**
+     * 根据图片ID列表查询所有缩略图（按图片ID、尺寸升序）
+     */
+    public List<PostImageVariant> findByPostImageIds(List<Long> postImageIds) {
+        if (postImageIds == null || postImageIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = postImageIds.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT id, post_image_id as postImageId, max_edge as maxEdge, image_path as imagePath, width, height, " +
+                     "file_size as fileSize, create_time as createTime " +
+                     "FROM post_image_variant WHERE post_image_id IN (" + placeholders + ") ORDER BY post_image_id, max_edge";
+
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(PostImageVariant.class), postImageIds.toArray());
+    }
+
+    /**
+     * 查找ID大于指定值且路径可能不是规范形式的缩略图（不以 rootPrefix 开头，或含有 ./、//、反斜杠），按ID升序
+     */
+    public List<PostImageVariant> findNonCanonicalPaths(Long afterId, String rootPrefix, Integer limit) {
+        String sql = "SELECT id, post_image_id as postImageId, image_path as imagePath FROM post_image_variant " +
+                     "WHERE id > ? AND (image_path NOT LIKE CONCAT(?, '%') " +
+                     "OR image_path LIKE '%./%' OR image_path LIKE '%//%' OR INSTR(image_path, CHAR(92)) > 0) " +
+                     "ORDER BY id ASC LIMIT ?";
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(PostImageVariant.class), afterId, rootPrefix, limit);
+    }
+
+    /**
+     * 批量修改缩略图路径
+     * @param imagePaths 缩略图ID -> 新路径
+     */
+    public void updateImagePaths(Map<Long, String> imagePaths) {
+        if (imagePaths == null || imagePaths.isEmpty()) {
+            return;
+        }
+
+        String sql = "UPDATE post_image_variant SET image_path = ? WHERE id = ?";
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : imagePaths.entrySet()) {
+            batchArgs.add(new Object[]{entry.getValue(), entry.getKey()});
+        }
+        jdbcTemplate.batchUpdate(sql, batchArgs);
+    }
+
+    /**
+     * 查询给定路径中仍被缩略图引用的路径
+     */
+    public Set<String> findReferencedPaths(List<String> imagePaths) {
+        if (imagePaths == null || imagePaths.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        String placeholders = imagePaths.stream()
+                .map(path -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT DISTINCT image_path FROM post_image_variant WHERE image_path IN (" + placeholders + ")";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, String.class, imagePaths.toArray()));
+    }
+}
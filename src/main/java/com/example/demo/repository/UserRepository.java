@@ -4,14 +4,19 @@ import com.example.demo.entity.User;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * 用户数据访问层
@@ -52,6 +57,65 @@ public class UserRepository {
         }
     }
 
+    /**
+     * 根据ID列表批量查找用户（一次查询，不保证顺序）
+     */
+    public List<User> findByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        String placeholders = ids.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "SELECT id, username, password, avatar, sex, signature, location, is_logging as isLogging, create_time as createTime " +
+                     "FROM user WHERE id IN (" + placeholders + ")";
+        return jdbcTemplate.query(sql, new BeanPropertyRowMapper<>(User.class), ids.toArray());
+    }
+
+    /**
+     * 流式遍历所有用户的搜索字段（用户名、个性签名、地区），用于构建内存索引
+     */
+    public void forEachSearchFields(Consumer<User> consumer) {
+        String sql = "SELECT id, username, signature, location FROM user";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // MySQL驱动只有在fetchSize为Integer.MIN_VALUE时才逐行流式读取
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            User user = new User();
+            user.setId(rs.getLong("id"));
+            user.setUsername(rs.getString("username"));
+            user.setSignature(rs.getString("signature"));
+            user.setLocation(rs.getString("location"));
+            consumer.accept(user);
+        });
+    }
+
+    /**
+     * 统计用户总数
+     */
+    public long count() {
+        String sql = "SELECT COUNT(*) FROM user";
+        Long count = jdbcTemplate.queryForObject(sql, Long.class);
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * 流式遍历所有用户名，用于构建用户名布隆过滤器
+     */
+    public void forEachUsername(Consumer<String> consumer) {
+        String sql = "SELECT username FROM user";
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(rs.getString(1)));
+    }
+
     /**
      * 保存用户（注册）
      */
@@ -170,5 +234,35 @@ public class UserRepository {
         String sql = "UPDATE user SET is_logging = ? WHERE id = ?";
         jdbcTemplate.update(sql, isLogging, userId);
     }
+
+    /**
+     * 批量更新用户登录状态
+     */
+    public void batchUpdateLoginStatus(List<Long> userIds, Integer isLogging) {
+        if (userIds == null || userIds.isEmpty()) {
+            return;
+        }
+
+        String placeholders = userIds.stream()
+                .map(id -> "?")
+                .reduce((a, b) -> a + "," + b)
+                .orElse("");
+
+        String sql = "UPDATE user SET is_logging = ? WHERE id IN (" + placeholders + ")";
+
+        List<Object> params = new ArrayList<>();
+        params.add(isLogging);
+        params.addAll(userIds);
+
+        jdbcTemplate.update(sql, params.toArray());
+    }
+
+    /**
+     * 将所有用户的登录状态重置为离线
+     */
+    public void resetLoginStatus() {
+        String sql = "UPDATE user SET is_logging = 0 WHERE is_logging = 1";
+        jdbcTemplate.update(sql);
+    }
 }
 
@@ -0,0 +1,107 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 头像内容缓存（头像文件路径 -> JPEG 字节）
+ * 按最近使用淘汰，总字节数不超过预算。头像文件名带随机版本号，同一路径的内容不会变化，只在删除旧头像时移除。
+ * 另外缓存用户当前的 avatar 字段（用户ID -> avatar），读取头像命中时不需要查询数据库；
+ * 修改头像后由写入方覆盖，查询数据库得到的值只在没有缓存项时放入，不会覆盖更新的值。
+ */
+@Component
+public class AvatarCache {
+
+    @Value("${avatar.cache.max-bytes:33554432}")
+    private long maxBytes;
+
+    @Value("${avatar.cache.max-users:100000}")
+    private int maxUsers;
+
+    private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    private long totalBytes = 0;
+
+    // 用户ID -> avatar 字段（没有头像时为空字符串）
+    private final LinkedHashMap<Long, String> userAvatars = new LinkedHashMap<>(1024, 0.75f, true);
+
+    public byte[] get(String path) {
+        synchronized (entries) {
+            return entries.get(path);
+        }
+    }
+
+    /**
+     * 放入缓存（单个超过预算四分之一的内容不缓存）
+     */
+    public void put(String path, byte[] content) {
+        if (content.length > maxBytes / 4) {
+            return;
+        }
+        synchronized (entries) {
+            byte[] previous = entries.put(path, content);
+            if (previous != null) {
+                totalBytes -= previous.length;
+            }
+            totalBytes += content.length;
+            Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                totalBytes -= iterator.next().getValue().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    public void evict(String path) {
+        synchronized (entries) {
+            byte[] removed = entries.remove(path);
+            if (removed != null) {
+                totalBytes -= removed.length;
+            }
+        }
+    }
+
+    /**
+     * 用户当前的 avatar 字段，未缓存时返回null（没有头像时为空字符串）
+     */
+    public String getUserAvatar(Long userId) {
+        synchronized (userAvatars) {
+            return userAvatars.get(userId);
+        }
+    }
+
+    /**
+     * 修改头像后记录新的 avatar 字段（覆盖已有的缓存项）
+     */
+    public void putUserAvatar(Long userId, String avatar) {
+        synchronized (userAvatars) {
+            storeUserAvatar(userId, avatar);
+        }
+    }
+
+    /**
+     * 记录从数据库查询到的 avatar 字段（已有缓存项时不覆盖，查询期间写入的新值优先）
+     * @return 缓存中的 avatar 字段
+     */
+    public String putUserAvatarIfAbsent(Long userId, String avatar) {
+        synchronized (userAvatars) {
+            String current = userAvatars.get(userId);
+            if (current != null) {
+                return current;
+            }
+            storeUserAvatar(userId, avatar);
+            return avatar != null ? avatar : "";
+        }
+    }
+
+    private void storeUserAvatar(Long userId, String avatar) {
+        userAvatars.put(userId, avatar != null ? avatar : "");
+        while (userAvatars.size() > maxUsers) {
+            userAvatars.remove(userAvatars.keySet().iterator().next());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.User;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.util.ExifOrientation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 头像服务
+ * 上传的头像居中裁剪为正方形后，在线程池中并行缩放为几个固定尺寸（默认48、96、192），
+ * 保存为 uploads/avatars/<用户ID>/<版本号>_<尺寸>.jpg，用户的 avatar 字段记录最大尺寸的路径。
+ * 读取时按请求的尺寸从内存缓存返回 JPEG 字节。
+ * 同一用户的上传按用户ID加锁依次执行：写入新版本、更新 avatar 字段、删除旧版本之间不会被另一个上传打断。
+ */
+@Service
+public class AvatarService {
+
+    private static final Logger log = LoggerFactory.getLogger(AvatarService.class);
+
+    // 上传锁的分段数（按用户ID取模）
+    private static final int UPLOAD_LOCKS = 64;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AvatarCache avatarCache;
+
+    @Value("${upload.avatar.path:uploads/avatars}")
+    private String avatarPath;
+
+    @Value("${upload.image.max-bytes:10485760}")
+    private long maxBytes;
+
+    @Value("${avatar.sizes:48,96,192}")
+    private int[] sizes;
+
+    @Value("${avatar.workers:2}")
+    private int workers;
+
+    @Value("${avatar.jpeg-quality:0.85}")
+    private float jpegQuality;
+
+    private ThreadPoolExecutor executor;
+
+    // 使用 ReentrantLock 而不是 synchronized，上传在虚拟线程中等待时不会占住载体线程
+    private final ReentrantLock[] uploadLocks = new ReentrantLock[UPLOAD_LOCKS];
+
+    @PostConstruct
+    public void init() {
+        for (int i = 0; i < UPLOAD_LOCKS; i++) {
+            uploadLocks[i] = new ReentrantLock();
+        }
+        Arrays.sort(sizes);
+        AtomicInteger threadIndex = new AtomicInteger();
+        // 队列满时由上传请求的线程自己处理，保证上传一定能完成
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(100),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "avatar-resize-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 上传头像
+     * @param userId 用户ID
+     * @param file 头像图片
+     * @return 更新后的用户信息
+     */
+    public User uploadAvatar(Long userId, MultipartFile file) throws IOException {
+        if (userRepository.findById(userId).isEmpty()) {
+            throw new RuntimeException("用户不存在");
+        }
+        if (file == null || file.isEmpty()) {
+            throw new RuntimeException("头像不能为空");
+        }
+        if (file.getSize() > maxBytes) {
+            throw new RuntimeException("头像大小不能超过" + (maxBytes / 1024 / 1024) + "MB");
+        }
+
+        int orientation = readOrientation(file);
+        BufferedImage square;
+        try (InputStream inputStream = file.getInputStream()) {
+            square = decodeSquare(inputStream, orientation);
+        }
+
+        Path directory = Paths.get(avatarPath, String.valueOf(userId));
+        String version = UUID.randomUUID().toString().replace("-", "");
+        ReentrantLock lock = uploadLocks[Math.floorMod(Long.hashCode(userId), UPLOAD_LOCKS)];
+        lock.lock();
+        try {
+            Files.createDirectories(directory);
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int size : sizes) {
+                tasks.add(() -> writeSize(square, directory.resolve(version + "_" + size + ".jpg"), size));
+            }
+            List<String> paths = new ArrayList<>();
+            try {
+                for (Future<String> future : executor.invokeAll(tasks)) {
+                    paths.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("头像处理被中断");
+            } catch (ExecutionException e) {
+                throw new IOException("头像处理失败：" + e.getCause().getMessage());
+            }
+
+            userRepository.updateAvatar(userId, paths.get(paths.size() - 1));
+            User user = userRepository.findById(userId)
+                    .orElseThrow(() -> new RuntimeException("用户不存在"));
+            avatarCache.putUserAvatar(userId, user.getAvatar());
+            deleteOldVersions(directory, version, user.getAvatar());
+            return user;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 查询用户当前的 avatar 字段（先查缓存）
+     * @return avatar 字段（没有头像时为空字符串），用户不存在时返回null
+     */
+    public String findAvatar(Long userId) {
+        String avatar = avatarCache.getUserAvatar(userId);
+        if (avatar != null) {
+            return avatar;
+        }
+        User user = userRepository.findById(userId).orElse(null);
+        if (user == null) {
+            return null;
+        }
+        return avatarCache.putUserAvatarIfAbsent(userId, user.getAvatar());
+    }
+
+    /**
+     * 读取头像
+     * @param avatar 用户的 avatar 字段
+     * @param size 需要的尺寸（取不小于该值的最小尺寸）
+     * @return JPEG 字节；avatar 不是上传生成的头像或文件不存在时返回null
+     */
+    public byte[] readAvatar(String avatar, int size) throws IOException {
+        String path = sizedPath(avatar, size);
+        if (path == null) {
+            return null;
+        }
+        byte[] content = avatarCache.get(path);
+        if (content != null) {
+            return content;
+        }
+        try {
+            content = Files.readAllBytes(Paths.get(path));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        avatarCache.put(path, content);
+        return content;
+    }
+
+    /**
+     * 按尺寸换算头像路径，不是上传生成的头像时返回null
+     */
+    public String sizedPath(String avatar, int size) {
+        String suffix = "_" + sizes[sizes.length - 1] + ".jpg";
+        String prefix = Paths.get(avatarPath).normalize().toString().replace('\\', '/') + "/";
+        if (avatar == null || !avatar.startsWith(prefix) || !avatar.endsWith(suffix) || avatar.contains("..")) {
+            return null;
+        }
+        int chosen = sizes[sizes.length - 1];
+        for (int candidate : sizes) {
+            if (candidate >= size) {
+                chosen = candidate;
+                break;
+            }
+        }
+        return avatar.substring(0, avatar.length() - suffix.length()) + "_" + chosen + ".jpg";
+    }
+
+    /**
+     * 读取头像的 EXIF 方向（手机照片常带方向标记），无法读取时按正向处理
+     */
+    private static int readOrientation(MultipartFile file) {
+        try (InputStream inputStream = new BufferedInputStream(file.getInputStream())) {
+            return ExifOrientation.read(inputStream);
+        } catch (IOException e) {
+            return ExifOrientation.NORMAL;
+        }
+    }
+
+    /**
+     * 解码、按 EXIF 方向转正后居中裁剪为正方形（按最大尺寸的两倍做子采样，避免完整解码大图）
+     */
+    private BufferedImage decodeSquare(InputStream inputStream, int orientation) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new RuntimeException("仅支持 JPEG、PNG、GIF 格式的头像");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // 旋转90度的照片显示时宽高互换
+                boolean swap = ExifOrientation.swapsDimensions(orientation);
+                int width = swap ? reader.getHeight(0) : reader.getWidth(0);
+                int height = swap ? reader.getWidth(0) : reader.getHeight(0);
+                int side = Math.min(width, height);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, side / (sizes[sizes.length - 1] * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage decoded = ExifOrientation.apply(reader.read(0, param), orientation);
+
+                int decodedSide = Math.min(decoded.getWidth(), decoded.getHeight());
+                return decoded.getSubimage((decoded.getWidth() - decodedSide) / 2,
+                        (decoded.getHeight() - decodedSide) / 2, decodedSide, decodedSide);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 缩放为一个尺寸并保存（先写临时文件再替换），同时放入缓存
+     */
+    private String writeSize(BufferedImage square, Path target, int size) throws IOException {
+        BufferedImage scaled = ImageVariantService.scale(square, size, size);
+        byte[] content = encodeJpeg(scaled);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, content);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        String path = target.normalize().toString().replace('\\', '/');
+        avatarCache.put(path, content);
+        return path;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 删除用户目录下其他版本的头像文件（保留刚写入的版本和数据库中记录的版本）
+     */
+    private void deleteOldVersions(Path directory, String currentVersion, String storedAvatar) {
+        String storedName = storedAvatar != null ? storedAvatar.substring(storedAvatar.lastIndexOf('/') + 1) : "";
+        String storedVersion = storedName.contains("_") ? storedName.substring(0, storedName.indexOf('_')) : null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(currentVersion + "_")
+                        && (storedVersion == null || !name.startsWith(storedVersion + "_"))) {
+                    avatarCache.evict(file.normalize().toString().replace('\\', '/'));
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("删除旧头像失败：{}", e.getMessage());
+        }
+    }
+}
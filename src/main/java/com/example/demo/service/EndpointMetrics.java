@@ -0,0 +1,105 @@
+package com.example.demo.service;
+
+import com.example.demo.util.LatencyHistogram;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 接口请求统计
+ * 按处理方法记录耗时、响应字节数和每个请求执行的 SQL 语句数的分布；
+ * 每请求语句数的百分位上升通常意味着出现了 N+1 查询。
+ * 以 Method 为键查找已有的统计，请求方式和路径模板只在第一次记录时从请求中取出，之后记录时不产生新对象。
+ */
+@Component
+public class EndpointMetrics {
+
+    private final ConcurrentHashMap<Method, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次请求
+     * @param method 处理方法
+     * @param request 当前请求（只在第一次记录时用来取请求方式和路径模板）
+     * @param nanos 耗时（纳秒）
+     * @param bytes 响应字节数
+     * @param statements 执行的 SQL 语句数
+     * @param failed 是否失败（状态码大于等于400、ApiResponse 返回错误码或抛出异常）
+     */
+    public void record(Method method, HttpServletRequest request, long nanos, long bytes, long statements,
+                       boolean failed) {
+        EndpointStats stats = endpoints.get(method);
+        if (stats == null) {
+            stats = endpoints.computeIfAbsent(method, m -> new EndpointStats(
+                    m.getDeclaringClass().getSimpleName() + "." + m.getName(), pattern(request)));
+        }
+        stats.latency.record(nanos);
+        stats.bytes.record(bytes);
+        stats.statements.record(statements);
+        if (failed) {
+            stats.errors.increment();
+        }
+    }
+
+    /**
+     * 统计汇总（按累计耗时降序），耗时单位为毫秒
+     */
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (EndpointStats stats : endpoints.values()) {
+            LatencyHistogram latency = stats.latency;
+            Map<String, Object> item = new HashMap<>();
+            item.put("handler", stats.name);
+            item.put("pattern", stats.pattern);
+            item.put("count", latency.getCount());
+            item.put("errors", stats.errors.sum());
+            item.put("totalMs", latency.getSum() / 1_000_000.0);
+            item.put("meanMs", latency.getMean() / 1_000_000.0);
+            item.put("p50Ms", latency.percentile(50) / 1_000_000.0);
+            item.put("p99Ms", latency.percentile(99) / 1_000_000.0);
+            item.put("p999Ms", latency.percentile(99.9) / 1_000_000.0);
+            item.put("maxMs", latency.getMax() / 1_000_000.0);
+            item.put("bytesMean", stats.bytes.getMean());
+            item.put("bytesP99", stats.bytes.percentile(99));
+            item.put("queriesPerRequest", stats.statements.getMean());
+            item.put("queriesP99", stats.statements.percentile(99));
+            item.put("queriesMax", stats.statements.getMax());
+            result.add(item);
+        }
+        result.sort((a, b) -> Double.compare((Double) b.get("totalMs"), (Double) a.get("totalMs")));
+        return result;
+    }
+
+    private static String pattern(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    private static final class EndpointStats {
+        private final String name;
+        private final String pattern;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram bytes = new LatencyHistogram();
+        private final LatencyHistogram statements = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        private EndpointStats(String name, String pattern) {
+            this.name = name;
+            this.pattern = pattern;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.FriendChangeLogRepository;
+import com.example.demo.repository.FriendRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 内存好友图
+ * 每个用户的好友ID保存为有序的 long[]（邻接表），启动时从 friend 表加载，
+ * 之后由同意/删除好友增量维护。好友列表、好友关系判断和好友数量都不再访问数据库。
+ * 数组一经发布不再修改（写时复制），读操作无锁。
+ * 定期及停机时把图写成本地快照，重启时映射快照文件，只从数据库补齐快照之后的变更。
+ * 从快照恢复时，快照中的用户留在映射内存中，第一次访问或修改时才复制到堆上的邻接表。
+ * 修改好友关系的事务和随后的图更新在 {@link #change} 中执行；写快照时短暂排他，
+ * 保证记录的高水位之前的变更都已提交并且已在图中，重启后从该高水位补齐即可。
+ */
+@Component
+public class FriendGraph {
+
+    private static final Logger log = LoggerFactory.getLogger(FriendGraph.class);
+
+    private static final long[] EMPTY = new long[0];
+
+    private static final int OP_ADD = 1;
+    private static final int OP_REMOVE = 2;
+
+    // 对账时每次查询的好友ID数量
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    @Autowired
+    private FriendRepository friendRepository;
+
+    @Autowired
+    private FriendChangeLogRepository friendChangeLogRepository;
+
+    @Autowired
+    private FriendGraphSnapshot snapshot;
+
+    @Value("${friend.graph.snapshot.enabled:true}")
+    private boolean snapshotEnabled;
+
+    // 用户ID -> 有序的好友ID数组（覆盖快照中的同一用户；空数组表示该用户已没有好友）
+    private volatile ConcurrentHashMap<Long, long[]> adjacency = new ConcurrentHashMap<>();
+
+    // 启动时映射的快照，没有时为null
+    private volatile FriendGraphSnapshot.Mapped base;
+
+    // 修改好友关系时共享持有，读取快照高水位时排他持有
+    private final ReentrantReadWriteLock changeLock = new ReentrantReadWriteLock();
+
+    private volatile boolean ready = false;
+
+    // 加载期间发生的变更，加载完成后在新图上重放（由this保护）
+    private boolean loading = false;
+    private final List<long[]> pendingOps = new ArrayList<>();
+
+    /**
+     * 启动后加载好友图：优先从快照恢复，没有可用快照时从数据库全量加载
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            loading = true;
+            pendingOps.clear();
+        }
+
+        ConcurrentHashMap<Long, long[]> next = null;
+        FriendGraphSnapshot.Mapped mapped = snapshotEnabled ? snapshot.read() : null;
+        long edges = 0;
+        String source = "快照";
+        try {
+            if (mapped != null) {
+                try {
+                    next = new ConcurrentHashMap<>();
+                    replaySince(next, mapped);
+                    edges = mapped.getEdgeCount();
+                } catch (RuntimeException e) {
+                    log.warn("从快照补齐好友图失败，改为全量加载：{}", e.getMessage());
+                    next = null;
+                    mapped = null;
+                }
+            }
+            if (next == null) {
+                source = "数据库";
+                next = new ConcurrentHashMap<>();
+                EdgeCollector collector = new EdgeCollector(next);
+                friendRepository.forEachEdge(collector::accept);
+                collector.flush();
+                edges = collector.edges;
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loading = false;
+                pendingOps.clear();
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            for (long[] op : pendingOps) {
+                apply(next, mapped, (int) op[0], op[1], op[2]);
+            }
+            pendingOps.clear();
+            // 先发布快照再发布邻接表，读到新邻接表时一定能读到对应的快照
+            base = mapped;
+            adjacency = next;
+            loading = false;
+            ready = true;
+        }
+        log.info("好友图从{}加载完成：{} 个用户，{} 条好友关系，耗时 {} ms", source,
+                mapped != null ? mapped.getUserCount() : next.size(), edges, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 定期写入快照
+     */
+    @Scheduled(initialDelayString = "${friend.graph.snapshot.interval-ms:600000}",
+               fixedDelayString = "${friend.graph.snapshot.interval-ms:600000}")
+    public void writeSnapshot() {
+        if (!snapshotEnabled || !ready) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            // 排他读取高水位：此时没有进行中的修改，高水位之前的变更都已提交并更新到图中；
+            // 之后才复制图，复制时可能多包含高水位之后的变更，重放时按数据库当前状态校正即可
+            long friendHighWater;
+            long logHighWater;
+            changeLock.writeLock().lock();
+            try {
+                friendHighWater = friendRepository.findMaxId();
+                logHighWater = friendChangeLogRepository.findMaxId();
+            } finally {
+                changeLock.writeLock().unlock();
+            }
+            snapshot.write(base, adjacency, friendHighWater, logHighWater);
+            log.info("好友图快照写入完成，耗时 {} ms", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("好友图快照写入失败：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 停机前写入快照，下次启动直接使用
+     */
+    @PreDestroy
+    public void shutdown() {
+        writeSnapshot();
+    }
+
+    /**
+     * 执行一次好友关系修改（事务以及提交后的图更新）
+     * 写快照读取高水位时会等待进行中的修改完成，修改也会等待高水位读取完成后再开始
+     */
+    public <T> T change(Supplier<T> action) {
+        changeLock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            changeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在快照上补齐之后的变更：
+     * 先添加ID在高水位之后的好友关系，再按变更记录找出被添加或删除过的用户对，以数据库当前状态为准逐对校正
+     */
+    private void replaySince(ConcurrentHashMap<Long, long[]> graph, FriendGraphSnapshot.Mapped mapped) {
+        friendRepository.forEachEdgeAfter(mapped.getFriendHighWater(),
+                (userId, friendId) -> apply(graph, mapped, OP_ADD, userId, friendId));
+
+        Map<Long, Set<Long>> touched = new HashMap<>();
+        friendChangeLogRepository.forEachMembershipChangeAfter(mapped.getLogHighWater(),
+                (userId, friendId) -> touched.computeIfAbsent(userId, key -> new HashSet<>()).add(friendId));
+
+        for (Map.Entry<Long, Set<Long>> entry : touched.entrySet()) {
+            long userId = entry.getKey();
+            List<Long> friendIds = new ArrayList<>(entry.getValue());
+            for (int from = 0; from < friendIds.size(); from += RECONCILE_BATCH_SIZE) {
+                List<Long> batch = friendIds.subList(from, Math.min(from + RECONCILE_BATCH_SIZE, friendIds.size()));
+                Set<Long> existing = new HashSet<>(friendRepository.findFriendIdsAmong(userId, batch));
+                for (Long friendId : batch) {
+                    apply(graph, mapped, existing.contains(friendId) ? OP_ADD : OP_REMOVE, userId, friendId);
+                }
+            }
+        }
+    }
+
+    /**
+     * 好友图是否已加载完成（未完成时调用方应回退到数据库查询）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 获取用户的好友ID（有序数组，调用方不得修改）
+     */
+    public long[] neighbors(long userId) {
+        ConcurrentHashMap<Long, long[]> graph = adjacency;
+        long[] friends = graph.get(userId);
+        if (friends != null) {
+            return friends;
+        }
+        FriendGraphSnapshot.Mapped mapped = base;
+        if (mapped == null) {
+            return EMPTY;
+        }
+        long[] fromSnapshot = mapped.neighbors(userId);
+        if (fromSnapshot == null) {
+            return EMPTY;
+        }
+        // 复制到堆上，之后的访问不再查找快照；期间被修改过时以修改后的数组为准
+        long[] existing = graph.putIfAbsent(userId, fromSnapshot);
+        return existing != null ? existing : fromSnapshot;
+    }
+
+    /**
+     * 获取用户的好友ID列表
+     */
+    public List<Long> friendIds(long userId) {
+        long[] friends = neighbors(userId);
+        List<Long> ids = new ArrayList<>(friends.length);
+        for (long friendId : friends) {
+            ids.add(friendId);
+        }
+        return ids;
+    }
+
+    /**
+     * 判断 friendId 是否在 userId 的好友列表中
+     */
+    public boolean contains(long userId, long friendId) {
+        return Arrays.binarySearch(neighbors(userId), friendId) >= 0;
+    }
+
+    /**
+     * 获取好友数量
+     */
+    public int degree(long userId) {
+        return neighbors(userId).length;
+    }
+
+    /**
+     * 获取两个用户的共同好友（有序数组）
+     */
+    public long[] mutualFriends(long userId, long otherId) {
+        return intersect(neighbors(userId), neighbors(otherId));
+    }
+
+    /**
+     * 统计两个用户的共同好友数量（不分配数组）
+     */
+    public int mutualCount(long userId, long otherId) {
+        long[] a = neighbors(userId);
+        long[] b = neighbors(otherId);
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 线性合并求两个有序数组的交集
+     */
+    public static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * 添加双向好友关系
+     */
+    public synchronized void addFriendship(long userId, long friendId) {
+        mutate(OP_ADD, userId, friendId);
+        mutate(OP_ADD, friendId, userId);
+    }
+
+    /**
+     * 删除双向好友关系
+     */
+    public synchronized void removeFriendship(long userId, long friendId) {
+        mutate(OP_REMOVE, userId, friendId);
+        mutate(OP_REMOVE, friendId, userId);
+    }
+
+    private void mutate(int op, long userId, long friendId) {
+        apply(adjacency, base, op, userId, friendId);
+        if (loading) {
+            pendingOps.add(new long[]{op, userId, friendId});
+        }
+    }
+
+    /**
+     * 修改邻接表中的用户，邻接表中还没有该用户时以快照中的好友为基础
+     */
+    private static void apply(ConcurrentHashMap<Long, long[]> graph, FriendGraphSnapshot.Mapped mapped,
+                              int op, long userId, long friendId) {
+        graph.compute(userId, (key, friends) -> {
+            long[] current = friends;
+            if (current == null) {
+                long[] fromSnapshot = mapped != null ? mapped.neighbors(key) : null;
+                current = fromSnapshot != null ? fromSnapshot : EMPTY;
+            }
+            if (op == OP_ADD) {
+                return insert(current, friendId);
+            }
+            long[] remaining = remove(current, friendId);
+            // 快照中有该用户时保留空数组，避免读取时回退到快照中的旧好友
+            if (remaining.length == 0) {
+                return mapped != null && mapped.contains(key) ? EMPTY : null;
+            }
+            return remaining;
+        });
+    }
+
+    private static long[] insert(long[] sorted, long value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index >= 0) {
+            return sorted;
+        }
+        int insertAt = -index - 1;
+        long[] result = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, insertAt);
+        result[insertAt] = value;
+        System.arraycopy(sorted, insertAt, result, insertAt + 1, sorted.length - insertAt);
+        return result;
+    }
+
+    private static long[] remove(long[] sorted, long value) {
+        int index = Arrays.binarySearch(sorted, value);
+        if (index < 0) {
+            return sorted;
+        }
+        long[] result = new long[sorted.length - 1];
+        System.arraycopy(sorted, 0, result, 0, index);
+        System.arraycopy(sorted, index + 1, result, index, sorted.length - index - 1);
+        return result;
+    }
+
+    /**
+     * 将按 (user_id, friend_id) 排序的边流收集为每个用户的有序数组
+     */
+    private static final class EdgeCollector {
+        private final ConcurrentHashMap<Long, long[]> target;
+        private long currentUser = -1;
+        private long[] buffer = new long[64];
+        private int size = 0;
+        private long edges = 0;
+
+        private EdgeCollector(ConcurrentHashMap<Long, long[]> target) {
+            this.target = target;
+        }
+
+        private void accept(long userId, long friendId) {
+            if (userId != currentUser) {
+                flush();
+                currentUser = userId;
+            }
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, size * 2);
+            }
+            buffer[size++] = friendId;
+            edges++;
+        }
+
+        private void flush() {
+            if (size > 0) {
+                target.put(currentUser, Arrays.copyOf(buffer, size));
+                size = 0;
+            }
+        }
+    }
+}
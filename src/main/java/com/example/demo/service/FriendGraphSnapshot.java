@@ -0,0 +1,422 @@
+package com.example.demo.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 好友图快照文件
+ * CSR 格式：文件头 + 有序用户ID数组 + 偏移数组（用户数+1）+ 好友ID数组，均为小端 long。
+ * 写入时先写临时文件再原子替换；读取时用 FileChannel.map 按 1GB 分段映射（不受单个映射 2GB 的限制），
+ * 数据留在映射内存中，按用户二分查找后只复制该用户的好友数组。
+ */
+@Component
+public class FriendGraphSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(FriendGraphSnapshot.class);
+
+    private static final int MAGIC = 0x46475331; // "FGS1"
+    private static final int FORMAT_VERSION = 1;
+
+    // magic、格式版本（int） + 好友表高水位、变更记录高水位、用户数、好友关系数、生成时间（long）
+    private static final int HEADER_BYTES = 4 + 4 + 8 * 5;
+
+    // 每段映射的 long 数量（2^27 个，即1GB）
+    private static final int CHUNK_SHIFT = 27;
+
+    // 写入缓冲区大小
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    @Value("${friend.graph.snapshot.path:data/friend-graph.snapshot}")
+    private String snapshotPath;
+
+    /**
+     * 写入快照：合并上一份映射的快照和内存中变化过的用户
+     * @param base 上一份快照（可以为null），未变化的用户直接从映射内存复制到新文件
+     * @param overlay 用户ID -> 有序好友ID数组，覆盖 base 中的同一用户；空数组表示该用户已没有好友（数组不会被修改）
+     * @param friendHighWater friend 表高水位，之前的好友关系都已包含在快照中
+     * @param logHighWater friend_change_log 表高水位，之前的变更都已包含在快照中
+     */
+    public void write(Mapped base, Map<Long, long[]> overlay, long friendHighWater, long logHighWater) throws IOException {
+        // 先固定用户列表和每个用户的数组引用，避免写入过程中图变化导致偏移与内容不一致
+        long[] overlayIds = new long[overlay.size()];
+        long[][] overlayNeighbors = new long[overlay.size()][];
+        int overlayCount = 0;
+        for (Map.Entry<Long, long[]> entry : overlay.entrySet()) {
+            if (overlayCount == overlayIds.length) {
+                break;
+            }
+            overlayIds[overlayCount] = entry.getKey();
+            overlayNeighbors[overlayCount] = entry.getValue();
+            overlayCount++;
+        }
+        sortByUserId(overlayIds, overlayNeighbors, overlayCount);
+        Merged merged = new Merged(base, overlayIds, overlayNeighbors, overlayCount);
+
+        long userCount = 0;
+        long edgeCount = 0;
+        for (merged.reset(); merged.next(); ) {
+            userCount++;
+            edgeCount += merged.length();
+        }
+
+        Path target = Paths.get(snapshotPath);
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = parent.resolve(target.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(FORMAT_VERSION);
+            buffer.putLong(friendHighWater);
+            buffer.putLong(logHighWater);
+            buffer.putLong(userCount);
+            buffer.putLong(edgeCount);
+            buffer.putLong(System.currentTimeMillis());
+
+            for (merged.reset(); merged.next(); ) {
+                putLong(channel, buffer, merged.userId());
+            }
+            long offset = 0;
+            putLong(channel, buffer, offset);
+            for (merged.reset(); merged.next(); ) {
+                offset += merged.length();
+                putLong(channel, buffer, offset);
+            }
+            for (merged.reset(); merged.next(); ) {
+                long[] friends = merged.overlayNeighbors();
+                if (friends != null) {
+                    for (long friendId : friends) {
+                        putLong(channel, buffer, friendId);
+                    }
+                } else {
+                    long from = base.offset(merged.baseIndex());
+                    long to = base.offset(merged.baseIndex() + 1);
+                    for (long position = from; position < to; position++) {
+                        putLong(channel, buffer, base.neighborAt(position));
+                    }
+                }
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 映射快照，文件不存在或格式不正确时返回null
+     */
+    public Mapped read() {
+        Path path = Paths.get(snapshotPath);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES || (fileSize - HEADER_BYTES) % Long.BYTES != 0) {
+                log.warn("好友图快照大小不正确：{} 字节", fileSize);
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION) {
+                log.warn("好友图快照格式不匹配，忽略快照");
+                return null;
+            }
+            long friendHighWater = header.getLong();
+            long logHighWater = header.getLong();
+            long userCount = header.getLong();
+            long edgeCount = header.getLong();
+            long createdAt = header.getLong();
+            if (userCount < 0 || edgeCount < 0
+                    || HEADER_BYTES + (userCount * 2 + 1 + edgeCount) * 8 != fileSize) {
+                log.warn("好友图快照已损坏，忽略快照");
+                return null;
+            }
+
+            // 映射在通道关闭后仍然有效
+            long totalLongs = (fileSize - HEADER_BYTES) / Long.BYTES;
+            int chunkCount = (int) ((totalLongs + (1L << CHUNK_SHIFT) - 1) >>> CHUNK_SHIFT);
+            LongBuffer[] chunks = new LongBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long first = (long) i << CHUNK_SHIFT;
+                long count = Math.min(1L << CHUNK_SHIFT, totalLongs - first);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + first * Long.BYTES, count * Long.BYTES);
+                chunks[i] = mapped.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+
+            Mapped snapshot = new Mapped(chunks, userCount, edgeCount, friendHighWater, logHighWater, createdAt);
+            if (!snapshot.validate()) {
+                log.warn("好友图快照用户ID或偏移不正确，忽略快照");
+                return null;
+            }
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            log.warn("读取好友图快照失败：{}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void putLong(FileChannel channel, ByteBuffer buffer, long value) throws IOException {
+        if (buffer.remaining() < Long.BYTES) {
+            drain(channel, buffer);
+        }
+        buffer.putLong(value);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 按用户ID排序（同时移动好友数组）
+     */
+    private static void sortByUserId(long[] userIds, long[][] neighbors, int count) {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(userIds[a], userIds[b]));
+
+        long[] sortedIds = new long[count];
+        long[][] sortedNeighbors = new long[count][];
+        for (int i = 0; i < count; i++) {
+            sortedIds[i] = userIds[order[i]];
+            sortedNeighbors[i] = neighbors[order[i]];
+        }
+        System.arraycopy(sortedIds, 0, userIds, 0, count);
+        System.arraycopy(sortedNeighbors, 0, neighbors, 0, count);
+    }
+
+    /**
+     * 按用户ID升序合并遍历快照和内存中的用户，内存中的数组优先，跳过没有好友的用户
+     */
+    private static final class Merged {
+        private final Mapped base;
+        private final long[] overlayIds;
+        private final long[][] overlayNeighbors;
+        private final int overlayCount;
+
+        private long baseCursor;
+        private int overlayCursor;
+        private long userId;
+        private long baseIndex;
+        private long[] current;
+
+        private Merged(Mapped base, long[] overlayIds, long[][] overlayNeighbors, int overlayCount) {
+            this.base = base;
+            this.overlayIds = overlayIds;
+            this.overlayNeighbors = overlayNeighbors;
+            this.overlayCount = overlayCount;
+        }
+
+        private void reset() {
+            baseCursor = 0;
+            overlayCursor = 0;
+        }
+
+        private boolean next() {
+            long baseCount = base != null ? base.getUserCount() : 0;
+            while (baseCursor < baseCount || overlayCursor < overlayCount) {
+                long baseId = baseCursor < baseCount ? base.userId(baseCursor) : Long.MAX_VALUE;
+                long overlayId = overlayCursor < overlayCount ? overlayIds[overlayCursor] : Long.MAX_VALUE;
+                if (overlayCursor < overlayCount && overlayId <= baseId) {
+                    if (overlayId == baseId) {
+                        baseCursor++;
+                    }
+                    userId = overlayId;
+                    current = overlayNeighbors[overlayCursor++];
+                    if (current.length > 0) {
+                        return true;
+                    }
+                } else {
+                    userId = baseId;
+                    baseIndex = baseCursor++;
+                    current = null;
+                    if (length() > 0) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private long userId() {
+            return userId;
+        }
+
+        private long baseIndex() {
+            return baseIndex;
+        }
+
+        private long[] overlayNeighbors() {
+            return current;
+        }
+
+        private long length() {
+            return current != null ? current.length : base.offset(baseIndex + 1) - base.offset(baseIndex);
+        }
+    }
+
+    /**
+     * 映射的快照（只读，线程安全）
+     * 文件头之后的内容视为一个 long 数组：[0, 用户数) 为有序用户ID，之后用户数+1个偏移，再之后为好友ID
+     */
+    public static final class Mapped {
+        private final LongBuffer[] chunks;
+        private final long userCount;
+        private final long edgeCount;
+        private final long friendHighWater;
+        private final long logHighWater;
+        private final long createdAt;
+
+        private Mapped(LongBuffer[] chunks, long userCount, long edgeCount, long friendHighWater,
+                       long logHighWater, long createdAt) {
+            this.chunks = chunks;
+            this.userCount = userCount;
+            this.edgeCount = edgeCount;
+            this.friendHighWater = friendHighWater;
+            this.logHighWater = logHighWater;
+            this.createdAt = createdAt;
+        }
+
+        private long get(long index) {
+            return chunks[(int) (index >>> CHUNK_SHIFT)].get((int) (index & ((1L << CHUNK_SHIFT) - 1)));
+        }
+
+        private long userId(long index) {
+            return get(index);
+        }
+
+        private long offset(long index) {
+            return get(userCount + index);
+        }
+
+        private long neighborAt(long position) {
+            return get(userCount * 2 + 1 + position);
+        }
+
+        /**
+         * 检查用户ID严格递增、偏移单调且不越界（顺序读一遍，不分配内存）
+         */
+        private boolean validate() {
+            long previousId = Long.MIN_VALUE;
+            for (long i = 0; i < userCount; i++) {
+                long id = userId(i);
+                if (i > 0 && id <= previousId) {
+                    return false;
+                }
+                previousId = id;
+            }
+            long previous = offset(0);
+            if (previous != 0) {
+                return false;
+            }
+            for (long i = 1; i <= userCount; i++) {
+                long next = offset(i);
+                if (next < previous || next > edgeCount) {
+                    return false;
+                }
+                previous = next;
+            }
+            return previous == edgeCount;
+        }
+
+        /**
+         * 二分查找用户在快照中的下标，不存在时返回-1
+         */
+        private long indexOf(long userId) {
+            long low = 0;
+            long high = userCount - 1;
+            while (low <= high) {
+                long mid = (low + high) >>> 1;
+                long id = userId(mid);
+                if (id < userId) {
+                    low = mid + 1;
+                } else if (id > userId) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 快照中是否有该用户
+         */
+        public boolean contains(long userId) {
+            return indexOf(userId) >= 0;
+        }
+
+        /**
+         * 从映射内存复制用户的有序好友数组，快照中没有该用户时返回null
+         */
+        public long[] neighbors(long userId) {
+            long index = indexOf(userId);
+            if (index < 0) {
+                return null;
+            }
+            long from = offset(index);
+            long[] friends = new long[(int) (offset(index + 1) - from)];
+            long start = userCount * 2 + 1 + from;
+            int copied = 0;
+            while (copied < friends.length) {
+                long position = start + copied;
+                LongBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+                int chunkIndex = (int) (position & ((1L << CHUNK_SHIFT) - 1));
+                int length = Math.min(friends.length - copied, chunk.limit() - chunkIndex);
+                chunk.get(chunkIndex, friends, copied, length);
+                copied += length;
+            }
+            return friends;
+        }
+
+        public long getUserCount() {
+            return userCount;
+        }
+
+        public long getEdgeCount() {
+            return edgeCount;
+        }
+
+        public long getFriendHighWater() {
+            return friendHighWater;
+        }
+
+        public long getLogHighWater() {
+            return logHighWater;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.FriendRequestRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 待处理好友申请计数器
+ * 每个用户的计数在首次查询时从数据库加载，之后由发送、同意、拒绝申请在提交后增减。
+ * 加载前后比较用户所在分段的修改次数：加载期间有增减时丢弃查询结果重新加载，已提交的增减不会被加载结果覆盖。
+ * 计数超过有效期后重新加载，修正级联删除等不经过这里的变更；超过数量上限时淘汰最久未访问的用户。
+ */
+@Component
+public class FriendRequestCounter {
+
+    // 修改次数的分段数（按用户ID取模）
+    private static final int STAMP_STRIPES = 1024;
+
+    // 加载期间一直有并发增减时的最多加载次数，之后直接返回查询结果，不缓存
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    @Autowired
+    private FriendRequestRepository friendRequestRepository;
+
+    @Value("${friend.request.count-ttl-ms:300000}")
+    private long ttlMillis;
+
+    @Value("${friend.request.count-max-entries:100000}")
+    private int maxEntries;
+
+    // 接收者ID -> 待处理申请数量（按访问顺序），以下字段都由 counters 加锁保护
+    private final LinkedHashMap<Long, Counter> counters = new LinkedHashMap<>(1024, 0.75f, true);
+
+    // 每个分段的修改次数
+    private final long[] stamps = new long[STAMP_STRIPES];
+
+    /**
+     * 获取用户待处理的好友申请数量
+     */
+    public int get(Long receiverId) {
+        int stripe = stripe(receiverId);
+        int attempt = 0;
+        while (true) {
+            long stamp;
+            synchronized (counters) {
+                Counter counter = counters.get(receiverId);
+                if (counter != null && System.currentTimeMillis() - counter.loadedAt <= ttlMillis) {
+                    return Math.max(0, counter.value);
+                }
+                stamp = stamps[stripe];
+            }
+
+            int value = friendRequestRepository.countPendingByReceiverId(receiverId);
+            attempt++;
+            synchronized (counters) {
+                if (stamps[stripe] == stamp) {
+                    counters.put(receiverId, new Counter(value));
+                    evict();
+                    return Math.max(0, value);
+                }
+            }
+            if (attempt >= MAX_LOAD_ATTEMPTS) {
+                return Math.max(0, value);
+            }
+        }
+    }
+
+    /**
+     * 计数加减（未加载的用户只记录修改，下次查询时从数据库加载）
+     */
+    public void add(Long receiverId, int delta) {
+        synchronized (counters) {
+            stamps[stripe(receiverId)]++;
+            Counter counter = counters.get(receiverId);
+            if (counter != null) {
+                counter.value += delta;
+            }
+        }
+    }
+
+    /**
+     * 丢弃用户的计数，下次查询时重新加载
+     */
+    public void invalidate(Long receiverId) {
+        synchronized (counters) {
+            stamps[stripe(receiverId)]++;
+            counters.remove(receiverId);
+        }
+    }
+
+    private void evict() {
+        Iterator<Long> eldest = counters.keySet().iterator();
+        while (counters.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private static int stripe(Long receiverId) {
+        return Math.floorMod(Long.hashCode(receiverId), STAMP_STRIPES);
+    }
+
+    private static final class Counter {
+        private int value;
+        private final long loadedAt;
+
+        private Counter(int value) {
+            this.value = value;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+}
@@ -1,16 +1,30 @@
 package com.example.demo.service;
 
+import com.example.demo.dto.CursorPageResponse;
+import com.example.demo.dto.FriendSyncResponse;
+import com.example.demo.dto.KeysetCursor;
 import com.example.demo.entity.Friend;
+import com.example.demo.entity.FriendChangeLog;
 import com.example.demo.entity.FriendRequest;
+import com.example.demo.repository.FriendChangeLogRepository;
 import com.example.demo.repository.FriendRepository;
 import com.example.demo.repository.FriendRequestRepository;
 import com.example.demo.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * 好友服务层
@@ -18,6 +32,19 @@ import java.util.Optional;
 @Service
 public class FriendService {
 
+    // 批量同意时单次最多处理的申请数量
+    public static final int MAX_BATCH_ACCEPT = 100;
+
+    // 批量查询关系状态时单次最多查询的用户数量
+    public static final int MAX_BATCH_CHECK = 500;
+
+    // 关系状态
+    public static final String RELATION_SELF = "self";
+    public static final String RELATION_FRIEND = "friend";
+    public static final String RELATION_PENDING_OUTGOING = "pending_outgoing";
+    public static final String RELATION_PENDING_INCOMING = "pending_incoming";
+    public static final String RELATION_NONE = "none";
+
     @Autowired
     private FriendRepository friendRepository;
 
@@ -27,6 +54,18 @@ public class FriendService {
     @Autowired
     private FriendRequestRepository friendRequestRepository;
 
+    @Autowired
+    private FriendGraph friendGraph;
+
+    @Autowired
+    private FriendChangeLogRepository friendChangeLogRepository;
+
+    @Autowired
+    private FriendRequestCounter friendRequestCounter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     /**
      * 添加好友（发送好友申请）
      * @param userId 用户ID
@@ -50,12 +89,23 @@ public class FriendService {
         }
 
         // 检查是否是好友关系
-        if (!friendRepository.existsByUserIdAndFriendId(userId, friendId)) {
+        if (!isFriend(userId, friendId)) {
             throw new RuntimeException("不是好友关系");
         }
 
-        // 删除双向好友关系
-        friendRepository.deleteFriendship(userId, friendId);
+        // 删除双向好友关系并记录双方的变更，提交后更新好友图
+        friendGraph.change(() -> {
+            transactionTemplate.executeWithoutResult(status -> {
+                friendRepository.deleteFriendship(userId, friendId);
+                LocalDateTime now = LocalDateTime.now();
+                List<FriendChangeLog> logs = new ArrayList<>();
+                logs.add(new FriendChangeLog(userId, friendId, FriendChangeLog.OP_REMOVE, null, now));
+                logs.add(new FriendChangeLog(friendId, userId, FriendChangeLog.OP_REMOVE, null, now));
+                friendChangeLogRepository.saveBatch(logs);
+            });
+            friendGraph.removeFriendship(userId, friendId);
+            return null;
+        });
     }
 
     /**
@@ -67,6 +117,35 @@ public class FriendService {
         return friendRepository.findByUserId(userId);
     }
 
+    /**
+     * 游标分页获取好友列表（可按备注或用户名前缀筛选）
+     * @param userId 用户ID
+     * @param cursor 上一页返回的游标（为空表示第一页）
+     * @param size 每页大小
+     * @param keyword 备注或用户名前缀（可选）
+     * @return 好友关系分页结果
+     */
+    public CursorPageResponse<Friend> getFriendPage(Long userId, String cursor, int size, String keyword) {
+        KeysetCursor position = KeysetCursor.parse(cursor);
+
+        // 多查一条用于判断是否还有下一页
+        List<Friend> friends = friendRepository.findPageByUserId(userId,
+                position != null ? position.getCreateTime() : null,
+                position != null ? position.getId() : null,
+                keyword, size + 1);
+
+        boolean hasMore = friends.size() > size;
+        if (hasMore) {
+            friends = new ArrayList<>(friends.subList(0, size));
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            Friend last = friends.get(friends.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreateTime(), last.getId()).encode();
+        }
+        return new CursorPageResponse<>(friends, size, hasMore, nextCursor);
+    }
+
     /**
      * 设置好友备注
      * @param userId 用户ID
@@ -80,13 +159,18 @@ public class FriendService {
         }
 
         // 检查是否是好友关系
-        if (!friendRepository.existsByUserIdAndFriendId(userId, friendId)) {
+        if (!isFriend(userId, friendId)) {
             throw new RuntimeException("不是好友关系");
         }
 
         // 更新备注（如果remark为null或空字符串，则清空备注）
         String finalRemark = (remark != null && !remark.trim().isEmpty()) ? remark.trim() : null;
-        friendRepository.updateRemark(userId, friendId, finalRemark);
+        transactionTemplate.executeWithoutResult(status -> {
+            friendRepository.updateRemark(userId, friendId, finalRemark);
+            List<FriendChangeLog> logs = new ArrayList<>();
+            logs.add(new FriendChangeLog(userId, friendId, FriendChangeLog.OP_REMARK, finalRemark, LocalDateTime.now()));
+            friendChangeLogRepository.saveBatch(logs);
+        });
     }
 
     /**
@@ -96,16 +180,124 @@ public class FriendService {
      * @return 是否是好友
      */
     public boolean isFriend(Long userId, Long friendId) {
+        if (friendGraph.isReady()) {
+            return friendGraph.contains(userId, friendId);
+        }
         return friendRepository.existsByUserIdAndFriendId(userId, friendId);
     }
 
+    /**
+     * 批量查询当前用户与一组用户的关系状态
+     * 好友关系从内存好友图判断（未加载时一次IN查询），待处理申请两个方向合并为一次查询
+     * @param userId 当前用户ID
+     * @param targetIds 目标用户ID列表
+     * @return 目标用户ID -> 关系状态（self/friend/pending_outgoing/pending_incoming/none），按请求顺序
+     */
+    public Map<Long, String> getRelationStatuses(Long userId, List<Long> targetIds) {
+        List<Long> ids = targetIds.stream().distinct().toList();
+        if (ids.size() > MAX_BATCH_CHECK) {
+            throw new RuntimeException("单次最多查询" + MAX_BATCH_CHECK + "个用户");
+        }
+
+        Map<Long, String> statuses = new LinkedHashMap<>();
+        List<Long> others = new ArrayList<>();
+        for (Long id : ids) {
+            if (id.equals(userId)) {
+                statuses.put(id, RELATION_SELF);
+            } else {
+                statuses.put(id, RELATION_NONE);
+                others.add(id);
+            }
+        }
+
+        List<Long> nonFriends = new ArrayList<>();
+        if (friendGraph.isReady()) {
+            for (Long id : others) {
+                if (friendGraph.contains(userId, id)) {
+                    statuses.put(id, RELATION_FRIEND);
+                } else {
+                    nonFriends.add(id);
+                }
+            }
+        } else {
+            Set<Long> friendIds = new HashSet<>(friendRepository.findFriendIdsAmong(userId, others));
+            for (Long id : others) {
+                if (friendIds.contains(id)) {
+                    statuses.put(id, RELATION_FRIEND);
+                } else {
+                    nonFriends.add(id);
+                }
+            }
+        }
+
+        for (FriendRequest request : friendRequestRepository.findPendingBetween(userId, nonFriends)) {
+            if (request.getRequesterId().equals(userId)) {
+                statuses.put(request.getReceiverId(), RELATION_PENDING_OUTGOING);
+            } else if (!RELATION_PENDING_OUTGOING.equals(statuses.get(request.getRequesterId()))) {
+                statuses.put(request.getRequesterId(), RELATION_PENDING_INCOMING);
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * 获取用户的好友ID列表
+     * @param userId 用户ID
+     * @return 好友ID列表
+     */
+    public List<Long> getFriendIds(Long userId) {
+        if (friendGraph.isReady()) {
+            return friendGraph.friendIds(userId);
+        }
+        return friendRepository.findFriendIdsByUserId(userId);
+    }
+
+    /**
+     * 获取两个用户的共同好友ID（升序）
+     * @param userId 用户ID
+     * @param otherId 另一个用户ID
+     * @return 共同好友ID数组
+     */
+    public long[] getMutualFriendIds(Long userId, Long otherId) {
+        if (friendGraph.isReady()) {
+            return friendGraph.mutualFriends(userId, otherId);
+        }
+        return FriendGraph.intersect(sortedFriendIds(userId), sortedFriendIds(otherId));
+    }
+
+    /**
+     * 获取两个用户的共同好友数量
+     * @param userId 用户ID
+     * @param otherId 另一个用户ID
+     * @return 共同好友数量
+     */
+    public int getMutualFriendCount(Long userId, Long otherId) {
+        if (friendGraph.isReady()) {
+            return friendGraph.mutualCount(userId, otherId);
+        }
+        return getMutualFriendIds(userId, otherId).length;
+    }
+
+    private long[] sortedFriendIds(Long userId) {
+        List<Long> friendIds = friendRepository.findFriendIdsByUserId(userId);
+        long[] sorted = new long[friendIds.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = friendIds.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
     /**
      * 获取好友数量
      * @param userId 用户ID
      * @return 好友数量
      */
     public int getFriendCount(Long userId) {
-        return friendRepository.findByUserId(userId).size();
+        if (friendGraph.isReady()) {
+            return friendGraph.degree(userId);
+        }
+        return friendRepository.countByUserId(userId);
     }
 
     /**
@@ -131,7 +323,7 @@ public class FriendService {
         }
 
         // 检查是否已经是好友
-        if (friendRepository.existsByUserIdAndFriendId(requesterId, receiverId)) {
+        if (isFriend(requesterId, receiverId)) {
             throw new RuntimeException("已经是好友关系");
         }
 
@@ -158,69 +350,236 @@ public class FriendService {
         request.setCreateTime(LocalDateTime.now());
         request.setUpdateTime(LocalDateTime.now());
 
-        return friendRequestRepository.save(request);
+        FriendRequest savedRequest = friendRequestRepository.save(request);
+        friendRequestCounter.add(receiverId, 1);
+        return savedRequest;
     }
 
     /**
-     * 获取待处理的好友申请列表
+     * 游标分页获取待处理的好友申请
      * @param receiverId 接收者ID（当前用户）
-     * @return 好友申请列表
+     * @param cursor 上一页返回的游标（为空表示第一页）
+     * @param size 每页大小
+     * @return 好友申请分页结果
      */
-    public List<FriendRequest> getPendingFriendRequests(Long receiverId) {
-        return friendRequestRepository.findPendingByReceiverId(receiverId);
+    public CursorPageResponse<FriendRequest> getPendingFriendRequestPage(Long receiverId, String cursor, int size) {
+        KeysetCursor position = KeysetCursor.parse(cursor);
+
+        // 多查一条用于判断是否还有下一页
+        List<FriendRequest> requests = friendRequestRepository.findPendingPageByReceiverId(receiverId,
+                position != null ? position.getCreateTime() : null,
+                position != null ? position.getId() : null,
+                size + 1);
+
+        boolean hasMore = requests.size() > size;
+        if (hasMore) {
+            requests = new ArrayList<>(requests.subList(0, size));
+        }
+        String nextCursor = null;
+        if (hasMore) {
+            FriendRequest last = requests.get(requests.size() - 1);
+            nextCursor = new KeysetCursor(last.getCreateTime(), last.getId()).encode();
+        }
+        return new CursorPageResponse<>(requests, size, hasMore, nextCursor);
+    }
+
+    /**
+     * 获取待处理的好友申请数量
+     * @param receiverId 接收者ID（当前用户）
+     * @return 待处理申请数量
+     */
+    public int getPendingFriendRequestCount(Long receiverId) {
+        return friendRequestCounter.get(receiverId);
     }
 
     /**
      * 同意好友申请
+     * 锁定申请、写入双向好友关系、删除申请在同一个事务中完成，事务提交后再更新内存好友图
      * @param requestId 申请ID
      * @param receiverId 接收者ID（当前用户，用于验证权限）
      * @return 好友关系
      */
     public Friend acceptFriendRequest(Long requestId, Long receiverId) {
-        // 查找申请
-        FriendRequest request = friendRequestRepository.findById(requestId)
-                .orElseThrow(() -> new RuntimeException("好友申请不存在"));
+        return friendGraph.change(() -> doAcceptFriendRequest(requestId, receiverId));
+    }
 
-        // 验证权限：只有接收者才能同意申请
-        if (!request.getReceiverId().equals(receiverId)) {
-            throw new RuntimeException("无权处理此申请");
+    private Friend doAcceptFriendRequest(Long requestId, Long receiverId) {
+        Friend savedFriend;
+        try {
+            savedFriend = transactionTemplate.execute(status -> {
+                // 查找申请并加锁，防止重复处理
+                FriendRequest request = friendRequestRepository.findByIdForUpdate(requestId)
+                        .orElseThrow(() -> new RuntimeException("好友申请不存在"));
+
+                // 验证权限：只有接收者才能同意申请
+                if (!request.getReceiverId().equals(receiverId)) {
+                    throw new RuntimeException("无权处理此申请");
+                }
+
+                // 验证申请状态
+                if (!"pending".equals(request.getStatus())) {
+                    throw new RuntimeException("该申请已处理");
+                }
+
+                // 如果已经是好友，与原来一样只把申请标记为已同意（保留记录），随后提示已是好友
+                if (isFriend(request.getRequesterId(), request.getReceiverId())) {
+                    friendRequestRepository.updateStatus(requestId, "accepted");
+                    return null;
+                }
+
+                // 一条语句创建双向好友关系（申请者 -> 接收者，接收者 -> 申请者）
+                List<long[]> pairs = new ArrayList<>();
+                pairs.add(new long[]{request.getRequesterId(), request.getReceiverId()});
+                List<Friend> saved = friendRepository.saveFriendshipPairs(pairs, LocalDateTime.now());
+                friendChangeLogRepository.saveBatch(toAddLogs(saved));
+
+                // 处理完成后删除申请记录
+                friendRequestRepository.deleteById(requestId);
+                return saved.get(1);
+            });
+        } catch (DuplicateKeyException e) {
+            // 并发同意了双方互发的申请
+            throw new RuntimeException("已经是好友关系");
         }
 
-        // 验证申请状态
-        if (!"pending".equals(request.getStatus())) {
-            throw new RuntimeException("该申请已处理");
+        // 两个分支都使这条申请不再是待处理状态
+        friendRequestCounter.add(receiverId, -1);
+        if (savedFriend == null) {
+            throw new RuntimeException("已经是好友关系");
         }
+        friendGraph.addFriendship(savedFriend.getFriendId(), savedFriend.getUserId());
+        return savedFriend;
+    }
 
-        // 检查是否已经是好友
-        if (friendRepository.existsByUserIdAndFriendId(request.getRequesterId(), request.getReceiverId())) {
-            // 如果已经是好友，直接更新申请状态为已同意
-            friendRequestRepository.updateStatus(requestId, "accepted");
-            throw new RuntimeException("已经是好友关系");
+    /**
+     * 批量同意好友申请（一个事务内完成）
+     * 不存在、不属于当前用户或已处理的申请会被跳过；
+     * 已是好友的申请与单条同意一致，标记为已同意并保留记录，不创建关系，也计入跳过的申请
+     * @param requestIds 申请ID列表
+     * @param receiverId 接收者ID（当前用户）
+     * @return 申请ID -> 新建的好友关系（接收者 -> 申请者），按申请ID升序
+     */
+    public Map<Long, Friend> acceptFriendRequests(List<Long> requestIds, Long receiverId) {
+        List<Long> ids = requestIds.stream().distinct().toList();
+        if (ids.isEmpty()) {
+            throw new RuntimeException("申请ID不能为空");
+        }
+        if (ids.size() > MAX_BATCH_ACCEPT) {
+            throw new RuntimeException("单次最多同意" + MAX_BATCH_ACCEPT + "条申请");
+        }
+        return friendGraph.change(() -> doAcceptFriendRequests(ids, receiverId));
+    }
+
+    private Map<Long, Friend> doAcceptFriendRequests(List<Long> ids, Long receiverId) {
+
+        Map<Long, Friend> accepted;
+        try {
+            accepted = transactionTemplate.execute(status -> {
+                List<FriendRequest> requests = friendRequestRepository.findPendingByIdsForUpdate(ids, receiverId);
+
+                List<FriendRequest> toAccept = new ArrayList<>();
+                List<Long> toDelete = new ArrayList<>();
+                List<Long> alreadyFriends = new ArrayList<>();
+                for (FriendRequest request : requests) {
+                    if (isFriend(request.getRequesterId(), request.getReceiverId())) {
+                        alreadyFriends.add(request.getId());
+                    } else {
+                        toAccept.add(request);
+                        toDelete.add(request.getId());
+                    }
+                }
+
+                List<long[]> pairs = new ArrayList<>();
+                for (FriendRequest request : toAccept) {
+                    pairs.add(new long[]{request.getRequesterId(), request.getReceiverId()});
+                }
+                List<Friend> saved = friendRepository.saveFriendshipPairs(pairs, LocalDateTime.now());
+                friendChangeLogRepository.saveBatch(toAddLogs(saved));
+                friendRequestRepository.deleteByIds(toDelete);
+                friendRequestRepository.updateStatusByIds(alreadyFriends, "accepted");
+
+                Map<Long, Friend> result = new LinkedHashMap<>();
+                for (int i = 0; i < toAccept.size(); i++) {
+                    result.put(toAccept.get(i).getId(), saved.get(i * 2 + 1));
+                }
+                return result;
+            });
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("部分申请的用户已成为好友，请刷新后重试");
+        }
+
+        // 已是好友而被标记为已同意的申请不在返回结果中，直接重新加载计数
+        friendRequestCounter.invalidate(receiverId);
+        for (Friend friend : accepted.values()) {
+            friendGraph.addFriendship(friend.getFriendId(), friend.getUserId());
+        }
+        return accepted;
+    }
+
+    private static List<FriendChangeLog> toAddLogs(List<Friend> friends) {
+        List<FriendChangeLog> logs = new ArrayList<>();
+        for (Friend friend : friends) {
+            logs.add(new FriendChangeLog(friend.getUserId(), friend.getFriendId(),
+                    FriendChangeLog.OP_ADD, null, friend.getCreateTime()));
         }
+        return logs;
+    }
 
-        // 创建双向好友关系
-        LocalDateTime now = LocalDateTime.now();
+    /**
+     * 增量同步好友列表
+     * 同一好友的多次变更合并为一条：最后一次为删除时返回在删除列表中，否则返回该好友关系的当前状态
+     * @param userId 用户ID
+     * @param sinceVersion 客户端上次同步到的版本号（0表示首次同步）
+     * @param limit 单次最多读取的变更记录数
+     * @return 同步结果；首次同步时只返回当前版本号，客户端应全量拉取好友列表
+     */
+    public FriendSyncResponse syncFriends(Long userId, long sinceVersion, int limit) {
+        if (sinceVersion <= 0) {
+            // 先取版本号再全量拉取，两者之间发生的变更会在下次同步时重复返回，客户端按覆盖处理即可
+            long version = friendChangeLogRepository.findLatestVersion(userId);
+            return new FriendSyncResponse(true, version, false, new ArrayList<>(), new ArrayList<>());
+        }
 
-        // 申请者 -> 接收者
-        Friend friend1 = new Friend();
-        friend1.setUserId(request.getRequesterId());
-        friend1.setFriendId(request.getReceiverId());
-        friend1.setCreateTime(now);
-        friendRepository.save(friend1);
+        // 多查一条用于判断是否还有更多变更
+        List<FriendChangeLog> changes = friendChangeLogRepository.findByUserIdSince(userId, sinceVersion, limit + 1);
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            changes = changes.subList(0, limit);
+        }
+        long version = changes.isEmpty() ? sinceVersion : changes.get(changes.size() - 1).getVersion();
 
-        // 接收者 -> 申请者（双向关系）
-        Friend friend2 = new Friend();
-        friend2.setUserId(request.getReceiverId());
-        friend2.setFriendId(request.getRequesterId());
-        friend2.setCreateTime(now);
-        Friend savedFriend = friendRepository.save(friend2);
+        // 按好友合并，保留最后一次变更
+        Map<Long, String> lastOps = new LinkedHashMap<>();
+        for (FriendChangeLog change : changes) {
+            lastOps.remove(change.getFriendId());
+            lastOps.put(change.getFriendId(), change.getOp());
+        }
 
-        // 更新申请状态为已同意
-        friendRequestRepository.updateStatus(requestId, "accepted");
-        // 处理完成后删除申请记录
-        friendRequestRepository.deleteById(requestId);
+        List<Long> removedFriendIds = new ArrayList<>();
+        List<Long> changedFriendIds = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : lastOps.entrySet()) {
+            if (FriendChangeLog.OP_REMOVE.equals(entry.getValue())) {
+                removedFriendIds.add(entry.getKey());
+            } else {
+                changedFriendIds.add(entry.getKey());
+            }
+        }
 
-        return savedFriend;
+        // 新增和修改备注的好友一次查询取当前状态；已经不存在的视为删除
+        Map<Long, Friend> current = new HashMap<>();
+        for (Friend friend : friendRepository.findByUserIdAndFriendIds(userId, changedFriendIds)) {
+            current.put(friend.getFriendId(), friend);
+        }
+        List<Friend> upserts = new ArrayList<>();
+        for (Long friendId : changedFriendIds) {
+            Friend friend = current.get(friendId);
+            if (friend != null) {
+                upserts.add(friend);
+            } else {
+                removedFriendIds.add(friendId);
+            }
+        }
+        return new FriendSyncResponse(false, version, hasMore, upserts, removedFriendIds);
     }
 
     /**
@@ -245,8 +604,10 @@ public class FriendService {
 
         // 更新申请状态为已拒绝
         friendRequestRepository.updateStatus(requestId, "rejected");
-        // 处理完成后删除申请记录
-        friendRequestRepository.deleteById(requestId);
+        // 处理完成后删除申请记录（并发拒绝时只有实际删除的一次减少计数）
+        if (friendRequestRepository.deleteById(requestId) > 0) {
+            friendRequestCounter.add(receiverId, -1);
+        }
     }
 }
 
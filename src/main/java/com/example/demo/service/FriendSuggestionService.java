@@ -0,0 +1,325 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.User;
+import com.example.demo.repository.UserRepository;
+import com.example.demo.util.LongIntHashMap;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 好友推荐服务（可能认识的人）
+ * 在内存好友图上做两跳遍历，按共同好友数排序，可按同地区加权。
+ * 好友多的用户使用 fork/join 并行计数；在线用户的推荐结果定期预计算，每个用户有计算时间预算。
+ * 超出预算只统计了部分好友的结果只缓存较短时间（friend.suggestion.partial-cache-ttl-ms），预计算时总是重算。
+ */
+@Service
+public class FriendSuggestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(FriendSuggestionService.class);
+
+    // 单个 fork/join 任务处理的好友数量下限
+    private static final int SPLIT_THRESHOLD = 64;
+
+    // 单次最多返回的推荐数量
+    public static final int MAX_LIMIT = 50;
+
+    // 每个用户保留的候选数量（按地区加权重排时需要多于返回数量的候选）
+    private static final int CACHED_CANDIDATES = MAX_LIMIT * 3;
+
+    @Autowired
+    private FriendGraph friendGraph;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PresenceService presenceService;
+
+    @Value("${friend.suggestion.parallel-threshold:512}")
+    private int parallelThreshold;
+
+    @Value("${friend.suggestion.time-budget-ms:50}")
+    private long timeBudgetMillis;
+
+    @Value("${friend.suggestion.cache-ttl-ms:600000}")
+    private long cacheTtlMillis;
+
+    @Value("${friend.suggestion.partial-cache-ttl-ms:30000}")
+    private long partialCacheTtlMillis;
+
+    @Value("${friend.suggestion.location-weight:2}")
+    private int locationWeight;
+
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // 用户ID -> 预计算的候选（按共同好友数排序）
+    private final ConcurrentHashMap<Long, Candidates> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 获取好友推荐
+     * @param userId 用户ID
+     * @param limit 返回数量
+     * @param weightByLocation 是否对同地区的用户加权
+     * @return 推荐列表（按得分倒序）
+     */
+    public List<Suggestion> suggest(Long userId, int limit, boolean weightByLocation) {
+        if (!friendGraph.isReady()) {
+            throw new RuntimeException("好友数据正在加载，请稍后重试");
+        }
+
+        int candidateCount = Math.min(limit, MAX_LIMIT) * 3;
+        Candidates candidates = cache.get(userId);
+        if (candidates == null || candidates.isExpired(cacheTtlMillis, partialCacheTtlMillis)) {
+            candidates = compute(userId, CACHED_CANDIDATES);
+            cache.put(userId, candidates);
+        }
+
+        // 预计算之后新加的好友不再推荐
+        List<Long> ids = new ArrayList<>();
+        List<Integer> mutualCounts = new ArrayList<>();
+        for (int i = 0; i < candidates.ids.length && ids.size() < candidateCount; i++) {
+            if (!friendGraph.contains(userId, candidates.ids[i])) {
+                ids.add(candidates.ids[i]);
+                mutualCounts.add(candidates.counts[i]);
+            }
+        }
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // 一次查询补全候选用户（以及当前用户的地区）
+        List<Long> lookupIds = new ArrayList<>(ids);
+        lookupIds.add(userId);
+        Map<Long, User> users = new HashMap<>();
+        for (User user : userRepository.findByIds(lookupIds)) {
+            users.put(user.getId(), user);
+        }
+        User self = users.get(userId);
+        String selfLocation = self != null ? self.getLocation() : null;
+
+        List<Suggestion> suggestions = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            User user = users.get(ids.get(i));
+            if (user == null) {
+                continue;
+            }
+            int score = mutualCounts.get(i);
+            if (weightByLocation && selfLocation != null && !selfLocation.isEmpty()
+                    && Objects.equals(selfLocation, user.getLocation())) {
+                score += locationWeight;
+            }
+            suggestions.add(new Suggestion(user, mutualCounts.get(i), score));
+        }
+        suggestions.sort((a, b) -> b.getScore() != a.getScore()
+                ? Integer.compare(b.getScore(), a.getScore())
+                : Long.compare(a.getUser().getId(), b.getUser().getId()));
+        return suggestions.size() > limit ? new ArrayList<>(suggestions.subList(0, limit)) : suggestions;
+    }
+
+    /**
+     * 为在线用户预计算推荐，并清理过期的结果
+     */
+    @Scheduled(initialDelayString = "${friend.suggestion.precompute-interval-ms:300000}",
+               fixedDelayString = "${friend.suggestion.precompute-interval-ms:300000}")
+    public void precompute() {
+        if (!friendGraph.isReady()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        cache.entrySet().removeIf(entry -> entry.getValue().isExpired(cacheTtlMillis, partialCacheTtlMillis));
+
+        int computed = 0;
+        for (Long userId : presenceService.onlineUserIds()) {
+            Candidates cached = cache.get(userId);
+            // 剩余有效期超过一半的完整结果不必重算
+            if (cached != null && !cached.truncated
+                    && System.currentTimeMillis() - cached.computedAt < cacheTtlMillis / 2) {
+                continue;
+            }
+            cache.put(userId, compute(userId, CACHED_CANDIDATES));
+            computed++;
+        }
+        if (computed > 0) {
+            log.info("好友推荐预计算完成：{} 个用户，耗时 {} ms", computed, System.currentTimeMillis() - start);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 两跳遍历统计共同好友数，超出时间预算时返回已统计的部分结果（标记为 truncated）
+     */
+    private Candidates compute(long userId, int limit) {
+        long[] friends = friendGraph.neighbors(userId);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        AtomicBoolean truncated = new AtomicBoolean(false);
+
+        LongIntHashMap counts;
+        if (friends.length >= parallelThreshold) {
+            counts = pool.invoke(new CountTask(userId, friends, 0, friends.length, deadline, truncated));
+        } else {
+            counts = count(userId, friends, 0, friends.length, deadline, truncated);
+        }
+        return topK(counts, limit, truncated.get());
+    }
+
+    private LongIntHashMap count(long userId, long[] friends, int from, int to, long deadline,
+                                 AtomicBoolean truncated) {
+        LongIntHashMap counts = new LongIntHashMap();
+        for (int i = from; i < to; i++) {
+            if ((i & 15) == 0 && System.nanoTime() > deadline) {
+                truncated.set(true);
+                break;
+            }
+            for (long candidate : friendGraph.neighbors(friends[i])) {
+                if (candidate != userId && Arrays.binarySearch(friends, candidate) < 0) {
+                    counts.addTo(candidate, 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 取共同好友数最多的前 limit 个候选（相同计数按ID升序）
+     */
+    private static Candidates topK(LongIntHashMap counts, int limit, boolean truncated) {
+        int capacity = Math.min(limit, counts.size());
+        long[] ids = new long[capacity];
+        int[] values = new int[capacity];
+        int[] size = {0};
+        counts.forEach((id, count) -> {
+            int n = size[0];
+            if (n == capacity && !better(count, id, values[n - 1], ids[n - 1])) {
+                return;
+            }
+            int pos = n == capacity ? n - 1 : n;
+            while (pos > 0 && better(count, id, values[pos - 1], ids[pos - 1])) {
+                values[pos] = values[pos - 1];
+                ids[pos] = ids[pos - 1];
+                pos--;
+            }
+            values[pos] = count;
+            ids[pos] = id;
+            if (n < capacity) {
+                size[0]++;
+            }
+        });
+        return new Candidates(ids, values, System.currentTimeMillis(), truncated);
+    }
+
+    private static boolean better(int count, long id, int otherCount, long otherId) {
+        return count > otherCount || (count == otherCount && id < otherId);
+    }
+
+    /**
+     * 并行统计共同好友：按好友区间二分，各自计数后合并
+     */
+    private final class CountTask extends RecursiveTask<LongIntHashMap> {
+        private static final long serialVersionUID = 1L;
+
+        private final long userId;
+        private final long[] friends;
+        private final int from;
+        private final int to;
+        private final long deadline;
+        private final AtomicBoolean truncated;
+
+        private CountTask(long userId, long[] friends, int from, int to, long deadline, AtomicBoolean truncated) {
+            this.userId = userId;
+            this.friends = friends;
+            this.from = from;
+            this.to = to;
+            this.deadline = deadline;
+            this.truncated = truncated;
+        }
+
+        @Override
+        protected LongIntHashMap compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                return count(userId, friends, from, to, deadline, truncated);
+            }
+            int mid = (from + to) >>> 1;
+            CountTask left = new CountTask(userId, friends, from, mid, deadline, truncated);
+            left.fork();
+            LongIntHashMap right = new CountTask(userId, friends, mid, to, deadline, truncated).compute();
+            LongIntHashMap leftResult = left.join();
+            if (leftResult.size() < right.size()) {
+                right.addAll(leftResult);
+                return right;
+            }
+            leftResult.addAll(right);
+            return leftResult;
+        }
+    }
+
+    /**
+     * 预计算的候选（按共同好友数倒序）
+     */
+    private static final class Candidates {
+        private final long[] ids;
+        private final int[] counts;
+        private final long computedAt;
+
+        // 超出时间预算，只统计了部分好友
+        private final boolean truncated;
+
+        private Candidates(long[] ids, int[] counts, long computedAt, boolean truncated) {
+            this.ids = ids;
+            this.counts = counts;
+            this.computedAt = computedAt;
+            this.truncated = truncated;
+        }
+
+        private boolean isExpired(long ttlMillis, long partialTtlMillis) {
+            return System.currentTimeMillis() - computedAt > (truncated ? partialTtlMillis : ttlMillis);
+        }
+    }
+
+    /**
+     * 推荐结果
+     */
+    public static class Suggestion {
+        private final User user;
+        private final int mutualCount;
+        private final int score;
+
+        public Suggestion(User user, int mutualCount, int score) {
+            this.user = user;
+            this.mutualCount = mutualCount;
+            this.score = score;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public int getMutualCount() {
+            return mutualCount;
+        }
+
+        public int getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.PostImage;
+import com.example.demo.entity.PostImageVariant;
+import com.example.demo.repository.PostImageRepository;
+import com.example.demo.repository.PostImageVariantRepository;
+import com.example.demo.util.ImagePaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 未引用图片清理任务
+ * 定期遍历 uploads/posts，把超过保留期且不被 post_image、post_image_variant 引用的文件删除
+ * （动态被删除后级联删除的只是记录；上传后没有发布的图片也不会有记录）。
+ * 引用按批次用 IN 查询，遍历速度受每秒文件数限制，避免与正常请求争抢磁盘。
+ * 文件和记录中的路径都按 ImagePaths 规范化后比较：库中不是规范形式的路径在每次清理前读出并在内存中规范化，
+ * 清理本身不修改记录；把这些路径改写为规范形式是单独的迁移步骤（normalizeStoredPaths，
+ * 可由 image.gc.normalize-paths-on-startup 在启动后执行）。
+ * 默认不启用，启用后默认只试运行（只记录日志，不删除文件）。
+ */
+@Service
+public class ImageGarbageCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageGarbageCollector.class);
+
+    // 每次查询引用的文件数量
+    private static final int LOOKUP_BATCH_SIZE = 500;
+
+    // 规范化路径时每次查询的记录数
+    private static final int NORMALIZE_BATCH_SIZE = 500;
+
+    @Autowired
+    private PostImageRepository postImageRepository;
+
+    @Autowired
+    private PostImageVariantRepository postImageVariantRepository;
+
+    @Autowired
+    private MediaFileCache mediaFileCache;
+
+    @Autowired
+    private PostImageCache postImageCache;
+
+    @Value("${upload.root:uploads}")
+    private String uploadRoot;
+
+    @Value("${upload.post.path:uploads/posts}")
+    private String postPath;
+
+    @Value("${image.gc.enabled:false}")
+    private boolean enabled;
+
+    // 试运行：只记录会删除的文件
+    @Value("${image.gc.dry-run:true}")
+    private boolean dryRun;
+
+    // 文件最后修改后至少保留的时间
+    @Value("${image.gc.grace-ms:86400000}")
+    private long graceMillis;
+
+    @Value("${image.gc.max-files-per-second:500}")
+    private int maxFilesPerSecond;
+
+    @Value("${image.gc.normalize-paths-on-startup:false}")
+    private boolean normalizePathsOnStartup;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * 定期清理
+     */
+    @Scheduled(initialDelayString = "${image.gc.initial-delay-ms:600000}",
+               fixedDelayString = "${image.gc.interval-ms:21600000}")
+    public void scheduledCollect() {
+        if (enabled) {
+            collect();
+        }
+    }
+
+    /**
+     * 启动后在后台把库中的图片路径改写为规范形式（需开启 image.gc.normalize-paths-on-startup）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void normalizePathsOnStartup() {
+        if (!normalizePathsOnStartup) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                normalizeStoredPaths();
+            } catch (Exception e) {
+                log.warn("图片路径规范化失败：{}", e.getMessage());
+            }
+        }, "image-path-normalize");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 清理一遍未引用的图片（已有清理在运行时直接返回）
+     * @return 回收的字节数（试运行时为可以回收的字节数）
+     */
+    public long collect() {
+        Path root = Paths.get(postPath);
+        if (!Files.isDirectory(root) || !running.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            Sweep sweep = new Sweep(System.currentTimeMillis() - graceMillis, nonCanonicalReferences());
+            Files.walkFileTree(root, sweep);
+            sweep.flush();
+            log.info("图片清理完成{}：扫描 {} 个文件，删除 {} 个，回收 {} 字节，耗时 {} ms",
+                    dryRun ? "（试运行，未删除文件）" : "", sweep.scanned, sweep.deleted, sweep.reclaimedBytes,
+                    System.currentTimeMillis() - sweep.startedAt);
+            return sweep.reclaimedBytes;
+        } catch (Exception e) {
+            log.warn("图片清理失败：{}", e.getMessage());
+            return 0;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 把 post_image、post_image_variant 中不是规范形式的路径改写为规范形式
+     * （早期发布的动态直接保存了客户端提交的路径）
+     * @return 改写的记录数
+     */
+    public int normalizeStoredPaths() {
+        AtomicInteger changed = new AtomicInteger();
+        forEachNonCanonicalPath(
+                updates -> {
+                    postImageRepository.updateImagePaths(updates);
+                    changed.addAndGet(updates.size());
+                },
+                updates -> {
+                    postImageVariantRepository.updateImagePaths(updates);
+                    changed.addAndGet(updates.size());
+                });
+        if (changed.get() > 0) {
+            // 缓存中的图片列表带有旧路径
+            postImageCache.clear();
+        }
+        log.info("图片路径规范化完成：改写了 {} 条记录", changed.get());
+        return changed.get();
+    }
+
+    /**
+     * 库中不是规范形式的路径对应的规范路径（只读取，不改写记录）
+     */
+    private Set<String> nonCanonicalReferences() {
+        Set<String> references = new HashSet<>();
+        forEachNonCanonicalPath(updates -> references.addAll(updates.values()),
+                updates -> references.addAll(updates.values()));
+        if (!references.isEmpty()) {
+            log.info("图片清理：{} 个文件由未规范化的路径引用", references.size());
+        }
+        return references;
+    }
+
+    /**
+     * 分批读取 post_image、post_image_variant 中不是规范形式的路径
+     * @param postImageBatch 接收每批 post_image 的 ID -> 规范路径
+     * @param variantBatch 接收每批 post_image_variant 的 ID -> 规范路径
+     */
+    private void forEachNonCanonicalPath(Consumer<Map<Long, String>> postImageBatch,
+                                         Consumer<Map<Long, String>> variantBatch) {
+        String rootPrefix = ImagePaths.root(uploadRoot) + "/";
+
+        long afterId = 0;
+        while (true) {
+            List<PostImage> postImages = postImageRepository.findNonCanonicalPaths(afterId, rootPrefix, NORMALIZE_BATCH_SIZE);
+            Map<Long, String> canonicalPaths = new HashMap<>();
+            for (PostImage postImage : postImages) {
+                String canonical = ImagePaths.canonical(postImage.getImagePath(), uploadRoot);
+                if (!canonical.equals(postImage.getImagePath())) {
+                    canonicalPaths.put(postImage.getId(), canonical);
+                }
+            }
+            postImageBatch.accept(canonicalPaths);
+            if (postImages.size() < NORMALIZE_BATCH_SIZE) {
+                break;
+            }
+            afterId = postImages.get(postImages.size() - 1).getId();
+        }
+
+        afterId = 0;
+        while (true) {
+            List<PostImageVariant> variants = postImageVariantRepository.findNonCanonicalPaths(
+                    afterId, rootPrefix, NORMALIZE_BATCH_SIZE);
+            Map<Long, String> canonicalPaths = new HashMap<>();
+            for (PostImageVariant variant : variants) {
+                String canonical = ImagePaths.canonical(variant.getImagePath(), uploadRoot);
+                if (!canonical.equals(variant.getImagePath())) {
+                    canonicalPaths.put(variant.getId(), canonical);
+                }
+            }
+            variantBatch.accept(canonicalPaths);
+            if (variants.size() < NORMALIZE_BATCH_SIZE) {
+                break;
+            }
+            afterId = variants.get(variants.size() - 1).getId();
+        }
+    }
+
+    /**
+     * 一次遍历的状态
+     */
+    private final class Sweep extends SimpleFileVisitor<Path> {
+        private final long cutoff;
+
+        // 由未规范化的路径引用的文件（规范路径）
+        private final Set<String> legacyReferences;
+
+        private final long startedAt = System.currentTimeMillis();
+
+        // 相对路径 -> 文件，等待查询引用
+        private final Map<String, Path> pending = new LinkedHashMap<>();
+
+        private long scanned = 0;
+        private long deleted = 0;
+        private long reclaimedBytes = 0;
+
+        private Sweep(long cutoff, Set<String> legacyReferences) {
+            this.cutoff = cutoff;
+            this.legacyReferences = legacyReferences;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+            scanned++;
+            throttle();
+            if (!attributes.isRegularFile() || attributes.lastModifiedTime().toMillis() >= cutoff) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            String name = file.getFileName().toString();
+            if (name.endsWith(".part") || name.endsWith(".tmp")) {
+                // 中断的上传或缩略图写入留下的临时文件
+                delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            pending.put(ImagePaths.canonical(file.toString(), uploadRoot), file);
+            if (pending.size() >= LOOKUP_BATCH_SIZE) {
+                flush();
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) {
+            // 遍历过程中被删除的文件忽略
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * 查询本批文件的引用并删除未引用的文件
+         */
+        private void flush() throws IOException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<String> paths = new ArrayList<>(pending.keySet());
+            Set<String> referenced = postImageRepository.findReferencedPaths(paths);
+            referenced.addAll(postImageVariantRepository.findReferencedPaths(paths));
+
+            for (Map.Entry<String, Path> entry : pending.entrySet()) {
+                if (referenced.contains(entry.getKey()) || legacyReferences.contains(entry.getKey())) {
+                    continue;
+                }
+                delete(entry.getValue());
+            }
+            pending.clear();
+        }
+
+        /**
+         * 删除文件（删除前重新检查修改时间，期间被重新上传的文件保留；试运行时只记录）
+         */
+        private boolean delete(Path file) throws IOException {
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                return false;
+            }
+            if (attributes.lastModifiedTime().toMillis() >= cutoff) {
+                return false;
+            }
+            if (dryRun) {
+                log.debug("图片清理（试运行）：未引用的文件 {}", file);
+                deleted++;
+                reclaimedBytes += attributes.size();
+                return true;
+            }
+            if (!Files.deleteIfExists(file)) {
+                return false;
+            }
+            mediaFileCache.evict(file.toAbsolutePath().normalize());
+            deleted++;
+            reclaimedBytes += attributes.size();
+            return true;
+        }
+
+        /**
+         * 超过每秒文件数上限时暂停
+         */
+        private void throttle() throws IOException {
+            if (maxFilesPerSecond <= 0) {
+                return;
+            }
+            long expectedMillis = scanned * 1000 / maxFilesPerSecond;
+            long aheadMillis = expectedMillis - (System.currentTimeMillis() - startedAt);
+            if (aheadMillis > 0) {
+                try {
+                    Thread.sleep(aheadMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("图片清理被中断");
+                }
+            }
+        }
+    }
+}
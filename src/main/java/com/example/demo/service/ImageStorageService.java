@@ -0,0 +1,291 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * 图片存储服务
+ * 请求体直接是图片内容时，通过固定大小的缓冲区从请求流写入磁盘，读取过程中识别类型、检查大小并计算 SHA-256，
+ * 类型或大小不符时在读完之前就拒绝；multipart 上传的图片已由容器写入临时文件，先检查文件头，再移动临时文件并计算哈希，
+ * 不再复制一遍内容。
+ * 图片按内容寻址保存在 uploads/posts/cas/<哈希前2位>/<哈希3-4位>/<哈希>.<扩展名>，相同内容只保存一份：
+ * 路径由哈希决定，去重只需检查目标文件是否已存在；是否仍被动态引用以 post_image 记录为准（由清理任务检查）。
+ */
+@Service
+public class ImageStorageService {
+
+    // 复制缓冲区大小
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    // 识别图片类型需要的文件头长度
+    private static final int SNIFF_BYTES = 12;
+
+    private static final String UNSUPPORTED_TYPE_MESSAGE = "仅支持 JPEG、PNG、GIF、WEBP 格式的图片";
+
+    // 按内容寻址的目录名
+    private static final String CAS_DIRECTORY = "cas";
+
+    @Value("${upload.post.path:uploads/posts}")
+    private String postPath;
+
+    @Value("${upload.image.max-bytes:10485760}")
+    private long maxBytes;
+
+    /**
+     * 保存 multipart 上传的动态图片（内容相同的图片返回同一路径）
+     * @param file 上传的图片
+     * @return 图片相对路径（可直接作为发布动态的 imagePaths）
+     */
+    public String storePostImage(MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new RuntimeException("图片不能为空");
+        }
+        if (file.getSize() > maxBytes) {
+            throw new RuntimeException(sizeLimitMessage(maxBytes));
+        }
+
+        byte[] head;
+        try (InputStream inputStream = file.getInputStream()) {
+            head = inputStream.readNBytes(SNIFF_BYTES);
+        }
+        String extension = sniffExtension(head);
+        if (extension == null) {
+            throw new RuntimeException(UNSUPPORTED_TYPE_MESSAGE);
+        }
+
+        Path casRoot = casRoot();
+        Path temp = newTempFile(casRoot);
+        try {
+            // 容器的临时文件与目标在同一文件系统时只是重命名（transferTo(Path) 总是复制，这里传入绝对路径的 File）
+            file.transferTo(temp.toAbsolutePath().toFile());
+            return publish(casRoot, temp, new StoredContent(hashFile(temp), extension));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 从请求流保存动态图片（请求体即图片内容），不经过 multipart 临时文件
+     * @param inputStream 请求体，由调用方关闭
+     * @param contentLength 请求声明的长度，未知时为-1
+     * @return 图片相对路径
+     */
+    public String storePostImage(InputStream inputStream, long contentLength) throws IOException {
+        if (contentLength == 0) {
+            throw new RuntimeException("图片不能为空");
+        }
+        if (contentLength > maxBytes) {
+            throw new RuntimeException(sizeLimitMessage(maxBytes));
+        }
+        return store(inputStream, maxBytes);
+    }
+
+    /**
+     * 导入已有的图片内容（迁移数据库中的图片时使用，不限制大小）
+     * @param inputStream 图片内容，由调用方关闭
+     * @return 图片相对路径
+     */
+    public String importPostImage(InputStream inputStream) throws IOException {
+        return store(inputStream, Long.MAX_VALUE);
+    }
+
+    private String store(InputStream inputStream, long limit) throws IOException {
+        Path casRoot = casRoot();
+        Path temp = newTempFile(casRoot);
+        try {
+            return publish(casRoot, temp, copy(inputStream, temp, limit));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private Path casRoot() throws IOException {
+        Path casRoot = Paths.get(postPath, CAS_DIRECTORY);
+        Files.createDirectories(casRoot);
+        return casRoot;
+    }
+
+    /**
+     * 临时文件与最终文件在同一文件系统，保证可以原子移动
+     */
+    private static Path newTempFile(Path casRoot) {
+        return casRoot.resolve("upload_" + UUID.randomUUID().toString().replace("-", "") + ".part");
+    }
+
+    /**
+     * 把临时文件移动到按内容寻址的位置（已存在相同内容时复用）
+     */
+    private String publish(Path casRoot, Path temp, StoredContent content) throws IOException {
+        Path directory = casRoot.resolve(content.hash.substring(0, 2)).resolve(content.hash.substring(2, 4));
+        Files.createDirectories(directory);
+        Path target = directory.resolve(content.hash + "." + content.extension);
+        if (!touch(target)) {
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // 并发上传了相同内容，使用已有文件
+            }
+        }
+
+        return toRelativePath(target);
+    }
+
+    /**
+     * 复用已有文件时刷新修改时间，避免在发布动态前被当作未引用的旧文件清理
+     * @return 文件不存在时返回false
+     */
+    private static boolean touch(Path target) throws IOException {
+        try {
+            Files.setLastModifiedTime(target, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 从输入流复制到文件，同时识别类型和计算哈希
+     */
+    private StoredContent copy(InputStream inputStream, Path target, long limit) throws IOException {
+        MessageDigest digest = newSha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        try (ReadableByteChannel in = Channels.newChannel(inputStream);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+            // 先读够文件头再识别类型
+            while (buffer.position() < SNIFF_BYTES) {
+                if (in.read(buffer) < 0) {
+                    break;
+                }
+            }
+            String extension = sniffExtension(buffer);
+            if (extension == null) {
+                throw new RuntimeException(UNSUPPORTED_TYPE_MESSAGE);
+            }
+
+            long total = 0;
+            do {
+                total += buffer.position();
+                if (total > limit) {
+                    throw new RuntimeException(sizeLimitMessage(limit));
+                }
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            } while (in.read(buffer) >= 0);
+            return new StoredContent(HexFormat.of().formatHex(digest.digest()), extension);
+        }
+    }
+
+    /**
+     * 计算文件的 SHA-256
+     */
+    private static String hashFile(Path path) throws IOException {
+        MessageDigest digest = newSha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String sizeLimitMessage(long limit) {
+        return "图片大小不能超过" + (limit / 1024 / 1024) + "MB";
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sniffExtension(ByteBuffer buffer) {
+        byte[] head = new byte[Math.min(buffer.position(), SNIFF_BYTES)];
+        for (int i = 0; i < head.length; i++) {
+            head[i] = buffer.get(i);
+        }
+        return sniffExtension(head);
+    }
+
+    /**
+     * 根据文件头识别图片类型，不是支持的图片时返回null
+     * @param head 文件开头的字节（至少12个字节才能识别 WEBP）
+     */
+    public static String sniffExtension(byte[] head) {
+        if (startsWith(head, 0xFF, 0xD8, 0xFF)) {
+            return "jpg";
+        }
+        if (startsWith(head, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return "png";
+        }
+        if (startsWith(head, 'G', 'I', 'F', '8')) {
+            return "gif";
+        }
+        if (head.length >= 12 && startsWith(head, 'R', 'I', 'F', 'F')
+                && head[8] == 'W' && head[9] == 'E' && head[10] == 'B' && head[11] == 'P') {
+            return "webp";
+        }
+        return null;
+    }
+
+    private static boolean startsWith(byte[] head, int... signature) {
+        if (head.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 转为以 / 分隔的相对路径
+     */
+    private static String toRelativePath(Path path) {
+        return path.normalize().toString().replace('\\', '/');
+    }
+
+    /**
+     * 已保存内容的哈希和扩展名
+     */
+    private static final class StoredContent {
+        private final String hash;
+        private final String extension;
+
+        private StoredContent(String hash, String extension) {
+            this.hash = hash;
+            this.extension = extension;
+        }
+    }
+}
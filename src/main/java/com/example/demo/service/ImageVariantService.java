@@ -0,0 +1,385 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.PostImage;
+import com.example.demo.entity.PostImageVariant;
+import com.example.demo.repository.PostImageRepository;
+import com.example.demo.repository.PostImageVariantRepository;
+import com.example.demo.util.BlurHash;
+import com.example.demo.util.ExifOrientation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 图片缩略图服务
+ * 发布动态后把图片放入有界线程池，按最长边生成多个尺寸的 JPEG 缩略图（<原文件名>_v240.jpg 等），
+ * 并记录到 post_image_variant；同时记录原图尺寸和 BlurHash 模糊占位图，客户端加载图片前即可按比例排版。
+ * 带 EXIF 方向的 JPEG 先转为正向再生成缩略图和占位图，记录的尺寸是显示时的宽高。
+ * 解码占用大量内存和CPU，后台任务和发布请求中的解码共用 image.variant.max-concurrent-decodes 个许可。
+ * 队列满时丢弃任务，由定时补全任务之后再处理。
+ * 生成失败（文件不存在、格式无法解码）时记录失败次数，达到 image.variant.max-attempts 后补全任务不再重试。
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImageVariantService.class);
+
+    // 每次补全扫描的图片数量
+    private static final int BACKFILL_BATCH_SIZE = 100;
+
+    // 计算占位图前把图片缩小到的最长边（像素）
+    private static final int PLACEHOLDER_EDGE = 32;
+
+    @Autowired
+    private PostImageRepository postImageRepository;
+
+    @Autowired
+    private PostImageVariantRepository postImageVariantRepository;
+
+    @Autowired
+    private PostImageCache postImageCache;
+
+    @Value("${upload.root:uploads}")
+    private String uploadRoot;
+
+    @Value("${image.variant.sizes:240,720}")
+    private int[] sizes;
+
+    @Value("${image.variant.workers:2}")
+    private int workers;
+
+    @Value("${image.variant.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${image.variant.jpeg-quality:0.8}")
+    private float jpegQuality;
+
+    @Value("${image.variant.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${image.variant.max-concurrent-decodes:4}")
+    private int maxConcurrentDecodes;
+
+    // 同时进行的解码数
+    private Semaphore decodePermits;
+
+    private ThreadPoolExecutor executor;
+
+    private Path root;
+
+    // 已在队列中或正在处理的图片ID，避免重复提交
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    // 补全扫描的位置，扫描到末尾后从头开始
+    private volatile long backfillCursor = 0;
+
+    @PostConstruct
+    public void init() {
+        root = Paths.get(uploadRoot).toAbsolutePath().normalize();
+        decodePermits = new Semaphore(Math.max(1, maxConcurrentDecodes));
+        Arrays.sort(sizes);
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "image-variant-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交图片生成缩略图（需已保存并带有ID）
+     */
+    public void submit(List<PostImage> postImages) {
+        for (PostImage postImage : postImages) {
+            if (postImage.getId() == null || !inFlight.add(postImage.getId())) {
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        process(postImage);
+                    } finally {
+                        inFlight.remove(postImage.getId());
+                    }
+                });
+            } catch (Exception e) {
+                // 队列已满，留给定时补全处理
+                inFlight.remove(postImage.getId());
+            }
+        }
+    }
+
+    /**
+     * 在当前线程生成缩略图，并把原图尺寸和占位图写入 postImage（不保存记录，图片可以还没有ID）
+     * @return 缩略图列表（postImageId 与 postImage 的ID相同，可能为null）
+     */
+    public List<PostImageVariant> generateNow(PostImage postImage) throws IOException {
+        Path source = resolve(postImage.getImagePath());
+        if (source == null || !Files.isRegularFile(source)) {
+            throw new IOException("图片文件不存在");
+        }
+        return generate(postImage, source);
+    }
+
+    /**
+     * 定期为还没有缩略图的图片补生成（历史图片、队列满时被丢弃的任务）
+     */
+    @Scheduled(initialDelayString = "${image.variant.backfill-interval-ms:300000}",
+               fixedDelayString = "${image.variant.backfill-interval-ms:300000}")
+    public void backfill() {
+        if (executor.getQueue().remainingCapacity() < BACKFILL_BATCH_SIZE) {
+            return;
+        }
+        List<PostImage> postImages = postImageRepository.findWithoutVariants(
+                backfillCursor, maxAttempts, BACKFILL_BATCH_SIZE);
+        backfillCursor = postImages.size() < BACKFILL_BATCH_SIZE
+                ? 0 : postImages.get(postImages.size() - 1).getId();
+        submit(postImages);
+    }
+
+    /**
+     * 为一张图片生成所有尺寸的缩略图
+     */
+    private void process(PostImage postImage) {
+        Path source = resolve(postImage.getImagePath());
+        if (source == null || !Files.isRegularFile(source)) {
+            recordFailure(postImage, "图片文件不存在");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            List<PostImageVariant> variants = generate(postImage, source);
+            postImageVariantRepository.saveOrUpdateBatch(variants);
+            postImageRepository.updateMetadata(postImage.getId(), postImage.getWidth(), postImage.getHeight(),
+                    postImage.getPlaceholder());
+            postImageCache.updateImage(postImage);
+            log.debug("图片 {} 生成 {} 个缩略图，耗时 {} ms",
+                    postImage.getId(), variants.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            recordFailure(postImage, e.getMessage());
+        }
+    }
+
+    /**
+     * 记录一次生成失败，并把失败次数更新到缓存（达到上限后缓存不再定期重新加载这张图片）
+     */
+    private void recordFailure(PostImage postImage, String message) {
+        try {
+            Integer attempts = postImageRepository.incrementVariantAttempts(postImage.getId());
+            if (attempts == null) {
+                return;
+            }
+            log.warn("图片 {} 生成缩略图失败（第 {} 次）：{}", postImage.getId(), attempts, message);
+            postImage.setVariantAttempts(attempts);
+            postImageCache.updateImage(postImage);
+        } catch (Exception e) {
+            log.warn("图片 {} 记录缩略图失败次数失败：{}", postImage.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 生成缩略图，并把原图尺寸和占位图写入 postImage（等待解码许可）
+     */
+    private List<PostImageVariant> generate(PostImage postImage, Path source) throws IOException {
+        try {
+            decodePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("图片处理被中断");
+        }
+        try {
+            return decodeAndScale(postImage, source);
+        } finally {
+            decodePermits.release();
+        }
+    }
+
+    private List<PostImageVariant> decodeAndScale(PostImage postImage, Path source) throws IOException {
+        List<PostImageVariant> variants = new ArrayList<>();
+        int orientation = ExifOrientation.read(source);
+        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("不支持的图片格式");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // 旋转90度的照片显示时宽高互换
+                boolean swap = ExifOrientation.swapsDimensions(orientation);
+                int width = swap ? reader.getHeight(0) : reader.getWidth(0);
+                int height = swap ? reader.getWidth(0) : reader.getHeight(0);
+                int longest = Math.max(width, height);
+                LocalDateTime now = LocalDateTime.now();
+                long originalSize = Files.size(source);
+
+                // 解码时按最大目标尺寸的两倍做子采样，避免把大图完整解码到内存
+                int largestTarget = sizes[sizes.length - 1];
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, longest / (largestTarget * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage decoded = ExifOrientation.apply(reader.read(0, param), orientation);
+
+                for (int maxEdge : sizes) {
+                    if (longest <= maxEdge && orientation == ExifOrientation.NORMAL) {
+                        // 原图已经够小，直接引用原图
+                        variants.add(new PostImageVariant(postImage.getId(), maxEdge, postImage.getImagePath(),
+                                width, height, originalSize, now));
+                        continue;
+                    }
+                    // 带方向的小图也重新编码一份正向的，不依赖客户端处理 EXIF
+                    int edge = Math.min(maxEdge, longest);
+                    int targetWidth = Math.max(1, (int) Math.round((double) width * edge / longest));
+                    int targetHeight = Math.max(1, (int) Math.round((double) height * edge / longest));
+                    BufferedImage scaled = scale(decoded, targetWidth, targetHeight);
+
+                    String variantPath = variantPath(postImage.getImagePath(), maxEdge);
+                    Path target = Paths.get(variantPath);
+                    long fileSize = writeJpeg(scaled, target);
+                    variants.add(new PostImageVariant(postImage.getId(), maxEdge, variantPath,
+                            targetWidth, targetHeight, fileSize, now));
+                }
+
+                postImage.setWidth(width);
+                postImage.setHeight(height);
+                postImage.setPlaceholder(placeholder(decoded));
+            } finally {
+                reader.dispose();
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * 缩小到几十像素后计算 BlurHash（横图 4x3 个分量，竖图 3x4 个分量）
+     */
+    private static String placeholder(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int longest = Math.max(width, height);
+        BufferedImage small = image;
+        if (longest > PLACEHOLDER_EDGE) {
+            small = scale(image, Math.max(1, width * PLACEHOLDER_EDGE / longest),
+                    Math.max(1, height * PLACEHOLDER_EDGE / longest));
+        }
+        return width >= height ? BlurHash.encode(small, 4, 3) : BlurHash.encode(small, 3, 4);
+    }
+
+    /**
+     * 逐步减半缩放（每次不超过一半，双线性插值），质量接近多次采样且比 getScaledInstance 快得多
+     */
+    static BufferedImage scale(BufferedImage image, int targetWidth, int targetHeight) {
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                // 透明背景填充为白色
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    /**
+     * 写入 JPEG（先写临时文件再替换），返回文件大小
+     * 临时文件名带随机后缀：同一内容的图片可能同时在多处生成同一个缩略图
+     */
+    private long writeJpeg(BufferedImage image, Path target) throws IOException {
+        Path temp = target.resolveSibling(
+                target.getFileName() + "." + UUID.randomUUID().toString().replace("-", "") + ".tmp");
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                writer.setOutput(output);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(jpegQuality);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return Files.size(target);
+    }
+
+    /**
+     * 缩略图路径：与原图同目录，原文件名加 _v<尺寸> 后缀
+     */
+    static String variantPath(String imagePath, int maxEdge) {
+        int slash = imagePath.lastIndexOf('/');
+        int dot = imagePath.lastIndexOf('.');
+        String base = dot > slash ? imagePath.substring(0, dot) : imagePath;
+        return base + "_v" + maxEdge + ".jpg";
+    }
+
+    /**
+     * 只处理 upload.root 目录下的图片
+     */
+    private Path resolve(String imagePath) {
+        if (imagePath == null || imagePath.isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(imagePath).toAbsolutePath().normalize();
+        return path.startsWith(root) ? path : null;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 媒体文件句柄缓存
+ * 对热门图片保留打开的 FileChannel 和文件元数据（大小、修改时间、ETag），按最近使用淘汰。
+ * 句柄带引用计数：被淘汰时如果还有请求在读取，等最后一个请求结束后再关闭。
+ */
+@Component
+public class MediaFileCache {
+
+    @Value("${media.cache.max-entries:512}")
+    private int maxEntries;
+
+    // 元数据超过该时间后重新读取文件属性，发现文件变化或被删除时丢弃缓存
+    @Value("${media.cache.revalidate-ms:10000}")
+    private long revalidateMillis;
+
+    private final LinkedHashMap<Path, MediaFile> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * 获取文件（已持有一个引用，使用完必须调用 release）
+     * @param path 已校验过的绝对路径
+     * @return 文件不存在或不是普通文件时返回null
+     */
+    public MediaFile acquire(Path path) throws IOException {
+        MediaFile cached;
+        synchronized (entries) {
+            cached = entries.get(path);
+        }
+        if (cached != null && System.currentTimeMillis() - cached.checkedAt < revalidateMillis && cached.retain()) {
+            return cached;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            evict(path);
+            return null;
+        }
+        if (!attributes.isRegularFile()) {
+            evict(path);
+            return null;
+        }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (cached != null && cached.size == attributes.size() && cached.lastModified == lastModified && cached.retain()) {
+            cached.checkedAt = System.currentTimeMillis();
+            return cached;
+        }
+
+        MediaFile opened = new MediaFile(path, FileChannel.open(path, StandardOpenOption.READ),
+                attributes.size(), lastModified);
+        opened.retain();
+        List<MediaFile> removed = new ArrayList<>();
+        synchronized (entries) {
+            MediaFile previous = entries.put(path, opened);
+            if (previous != null) {
+                removed.add(previous);
+            }
+            while (entries.size() > maxEntries) {
+                Map.Entry<Path, MediaFile> eldest = entries.entrySet().iterator().next();
+                removed.add(eldest.getValue());
+                entries.remove(eldest.getKey());
+            }
+        }
+        removed.forEach(MediaFile::release);
+        return opened;
+    }
+
+    /**
+     * 从缓存中移除文件（文件被删除或替换时调用）
+     */
+    public void evict(Path path) {
+        MediaFile removed;
+        synchronized (entries) {
+            removed = entries.remove(path);
+        }
+        if (removed != null) {
+            removed.release();
+        }
+    }
+
+    @PreDestroy
+    public void clear() {
+        List<MediaFile> removed;
+        synchronized (entries) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+        }
+        removed.forEach(MediaFile::release);
+    }
+
+    /**
+     * 缓存的媒体文件
+     */
+    public static final class MediaFile {
+        private final Path path;
+        private final FileChannel channel;
+        private final long size;
+        private final long lastModified;
+        private final String etag;
+        private volatile long checkedAt;
+
+        // 缓存本身持有一个引用，每个正在读取的请求各持有一个
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private MediaFile(Path path, FileChannel channel, long size, long lastModified) {
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+            this.checkedAt = System.currentTimeMillis();
+        }
+
+        private boolean retain() {
+            while (true) {
+                int current = refs.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 释放引用，最后一个引用释放时关闭文件
+         */
+        public void release() {
+            if (refs.decrementAndGet() == 0) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 关闭失败不影响后续请求
+                }
+            }
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
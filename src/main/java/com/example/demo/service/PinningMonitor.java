@@ -0,0 +1,193 @@
+package com.example.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 虚拟线程固定（pinning）监控
+ * 用 JFR RecordingStream 订阅 jdk.VirtualThreadPinned 事件：虚拟线程在 synchronized 块或本地方法中阻塞时
+ * 无法从载体线程卸载，持续时间超过阈值时产生事件。按栈顶的调用位置汇总次数和耗时，并保留最近的事件。
+ */
+@Component
+public class PinningMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(PinningMonitor.class);
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    // 记录的栈帧数
+    private static final int STACK_DEPTH = 24;
+
+    // 汇总时使用的调用位置帧数
+    private static final int SITE_FRAMES = 3;
+
+    // 保留的最近事件数
+    private static final int RECENT_EVENTS = 50;
+
+    // 汇总的调用位置上限，超过后新的位置计入 other
+    private static final int MAX_SITES = 500;
+
+    @Value("${diagnostics.pinning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${diagnostics.pinning.threshold-ms:20}")
+    private long thresholdMillis;
+
+    private RecordingStream stream;
+
+    private final LongAdder totalEvents = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    // 调用位置（栈顶几帧）-> 次数、累计耗时
+    private final ConcurrentHashMap<String, Site> sites = new ConcurrentHashMap<>();
+
+    private final Deque<Map<String, Object>> recent = new ArrayDeque<>();
+
+    private volatile long startedAt = 0;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stream = new RecordingStream();
+            stream.enable(PINNED_EVENT).withThreshold(Duration.ofMillis(thresholdMillis)).withStackTrace();
+            stream.onEvent(PINNED_EVENT, this::record);
+            stream.startAsync();
+            startedAt = System.currentTimeMillis();
+            log.info("虚拟线程固定监控已启动，阈值 {} ms", thresholdMillis);
+        } catch (Exception e) {
+            // 运行环境不支持 JFR 时只关闭监控
+            log.warn("虚拟线程固定监控启动失败：{}", e.getMessage());
+            stream = null;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void record(RecordedEvent event) {
+        long nanos = event.getDuration().toNanos();
+        totalEvents.increment();
+        totalNanos.add(nanos);
+
+        List<String> frames = frames(event.getStackTrace());
+        String key = siteKey(frames);
+        Site site = sites.get(key);
+        if (site == null) {
+            String siteKey = sites.size() < MAX_SITES ? key : "other";
+            site = sites.computeIfAbsent(siteKey, k -> new Site());
+        }
+        site.count.incrementAndGet();
+        site.nanos.addAndGet(nanos);
+
+        Map<String, Object> item = new HashMap<>();
+        item.put("time", event.getStartTime().toEpochMilli());
+        item.put("durationMs", nanos / 1_000_000.0);
+        item.put("thread", event.getThread() != null ? event.getThread().getJavaName() : null);
+        item.put("stack", frames);
+        synchronized (recent) {
+            recent.addFirst(item);
+            while (recent.size() > RECENT_EVENTS) {
+                recent.removeLast();
+            }
+        }
+        if (site.count.get() == 1) {
+            log.warn("虚拟线程被固定 {} ms：{}", nanos / 1_000_000, key);
+        }
+    }
+
+    /**
+     * 调用位置：跳过栈顶的 JDK 内部帧（VirtualThread.park、Thread.sleep 等），取之后的前几帧
+     */
+    private static String siteKey(List<String> frames) {
+        List<String> site = new ArrayList<>();
+        for (String frame : frames) {
+            if (site.isEmpty() && (frame.startsWith("java.") || frame.startsWith("jdk.") || frame.startsWith("sun."))) {
+                continue;
+            }
+            site.add(frame);
+            if (site.size() >= SITE_FRAMES) {
+                break;
+            }
+        }
+        return site.isEmpty() ? "unknown" : String.join(" <- ", site);
+    }
+
+    private static List<String> frames(RecordedStackTrace stackTrace) {
+        List<String> frames = new ArrayList<>();
+        if (stackTrace == null) {
+            return frames;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frames.size() >= STACK_DEPTH) {
+                break;
+            }
+            if (frame.isJavaFrame()) {
+                frames.add(frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                        + ":" + frame.getLineNumber());
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * 监控汇总（按累计耗时降序的调用位置和最近的事件）
+     */
+    public Map<String, Object> snapshot() {
+        List<Map<String, Object>> siteList = new ArrayList<>();
+        for (Map.Entry<String, Site> entry : sites.entrySet()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("site", entry.getKey());
+            item.put("count", entry.getValue().count.get());
+            item.put("totalMs", entry.getValue().nanos.get() / 1_000_000.0);
+            siteList.add(item);
+        }
+        siteList.sort((a, b) -> Double.compare((Double) b.get("totalMs"), (Double) a.get("totalMs")));
+
+        List<Map<String, Object>> recentList;
+        synchronized (recent) {
+            recentList = new ArrayList<>(recent);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", stream != null);
+        result.put("thresholdMs", thresholdMillis);
+        result.put("startedAt", startedAt);
+        result.put("totalEvents", totalEvents.sum());
+        result.put("totalMs", totalNanos.sum() / 1_000_000.0);
+        result.put("sites", siteList);
+        result.put("recent", recentList);
+        return result;
+    }
+
+    private static final class Site {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.PostImage;
+import com.example.demo.repository.PostImageRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 动态图片列表缓存（动态ID -> 按排序的图片列表）
+ * 动态发布后图片列表不再变化，发布时直接放入缓存，未命中时批量查询；没有图片的动态也缓存空列表。
+ * 只有尺寸、占位图由后台任务补充：这些字段还没填充的列表在较短时间后重新加载，避免一直返回空值；
+ * 生成失败次数已达上限的图片不会再被填充，视为已完成。
+ * 按动态ID分段加锁，每段各自按最近访问淘汰（总容量为 post.image.cache.max-entries）。
+ * 返回的列表和图片对象是共享的，调用方不能修改。
+ */
+@Component
+public class PostImageCache {
+
+    // 分段数：每段是一个带锁的 LRU，按动态ID分到不同段，读取动态列表时不争抢同一把锁
+    private static final int SEGMENTS = 16;
+
+    @Autowired
+    private PostImageRepository postImageRepository;
+
+    @Value("${post.image.cache.max-entries:200000}")
+    private int maxEntries;
+
+    // 尺寸信息还没填充的列表重新加载的间隔
+    @Value("${post.image.cache.incomplete-ttl-ms:60000}")
+    private long incompleteTtlMillis;
+
+    @Value("${image.variant.max-attempts:3}")
+    private int maxAttempts;
+
+    private final List<LinkedHashMap<Long, Entry>> segments = new ArrayList<>(SEGMENTS);
+
+    public PostImageCache() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new LinkedHashMap<>(1024, 0.75f, true));
+        }
+    }
+
+    /**
+     * 获取一条动态的图片列表
+     */
+    public List<PostImage> get(Long postId) {
+        return getAll(Collections.singletonList(postId)).get(postId);
+    }
+
+    /**
+     * 批量获取动态的图片列表（未命中的动态一次查询）
+     * 查询结果只在缓存项与查询前相同时放入：查询期间发布动态放入的完整列表、后台任务更新的图片不会被旧结果覆盖。
+     * @return 动态ID -> 图片列表（没有图片时为空列表）
+     */
+    public Map<Long, List<PostImage>> getAll(List<Long> postIds) {
+        Map<Long, List<PostImage>> result = new HashMap<>();
+        // 未命中的动态 -> 查询前的缓存项（没有时为null）
+        Map<Long, Entry> missing = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (Long postId : postIds) {
+            LinkedHashMap<Long, Entry> entries = segment(postId);
+            Entry entry;
+            synchronized (entries) {
+                entry = entries.get(postId);
+            }
+            if (entry != null && (entry.complete || now - entry.loadedAt < incompleteTtlMillis)) {
+                result.put(postId, entry.images);
+            } else {
+                missing.put(postId, entry);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, List<PostImage>> loaded = new HashMap<>();
+        for (Long postId : missing.keySet()) {
+            loaded.put(postId, new ArrayList<>());
+        }
+        for (PostImage postImage : postImageRepository.findByPostIds(new ArrayList<>(missing.keySet()))) {
+            loaded.get(postImage.getPostId()).add(postImage);
+        }
+        for (Map.Entry<Long, List<PostImage>> item : loaded.entrySet()) {
+            Long postId = item.getKey();
+            Entry entry = new Entry(item.getValue(), maxAttempts);
+            LinkedHashMap<Long, Entry> entries = segment(postId);
+            synchronized (entries) {
+                Entry current = entries.get(postId);
+                if (current == missing.get(postId)) {
+                    store(entries, postId, entry);
+                } else if (current != null) {
+                    entry = current;
+                }
+            }
+            result.put(postId, entry.images);
+        }
+        return result;
+    }
+
+    /**
+     * 放入动态的图片列表（发布动态后调用，覆盖已有的缓存项）
+     * @return 放入缓存的不可修改列表
+     */
+    public List<PostImage> put(Long postId, List<PostImage> postImages) {
+        Entry entry = new Entry(postImages, maxAttempts);
+        LinkedHashMap<Long, Entry> entries = segment(postId);
+        synchronized (entries) {
+            store(entries, postId, entry);
+        }
+        return entry.images;
+    }
+
+    /**
+     * 后台任务填充了图片尺寸和占位图后更新缓存中的图片（动态未缓存时不处理）
+     */
+    public void updateImage(PostImage updated) {
+        LinkedHashMap<Long, Entry> entries = segment(updated.getPostId());
+        synchronized (entries) {
+            Entry entry = entries.get(updated.getPostId());
+            if (entry == null) {
+                return;
+            }
+            List<PostImage> images = new ArrayList<>(entry.images);
+            for (int i = 0; i < images.size(); i++) {
+                if (images.get(i).getId().equals(updated.getId())) {
+                    images.set(i, updated);
+                    entries.put(updated.getPostId(), new Entry(images, maxAttempts));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空缓存（批量修改图片路径后调用）
+     */
+    public void clear() {
+        for (LinkedHashMap<Long, Entry> entries : segments) {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+    }
+
+    private LinkedHashMap<Long, Entry> segment(Long postId) {
+        return segments.get(Math.floorMod(Long.hashCode(postId * 0x9E3779B97F4A7C15L), SEGMENTS));
+    }
+
+    /**
+     * 放入一段并淘汰最久未访问的项（调用方持有该段的锁）
+     */
+    private void store(LinkedHashMap<Long, Entry> entries, Long postId, Entry entry) {
+        entries.put(postId, entry);
+        int segmentMaxEntries = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        while (entries.size() > segmentMaxEntries) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    private static PostImage copy(PostImage source) {
+        PostImage postImage = new PostImage(source.getId(), source.getPostId(), source.getImagePath(),
+                source.getSortOrder(), source.getCreateTime());
+        postImage.setWidth(source.getWidth());
+        postImage.setHeight(source.getHeight());
+        postImage.setPlaceholder(source.getPlaceholder());
+        postImage.setVariantAttempts(source.getVariantAttempts());
+        return postImage;
+    }
+
+    private static final class Entry {
+        private final List<PostImage> images;
+        private final boolean complete;
+        private final long loadedAt;
+
+        private Entry(List<PostImage> images, int maxAttempts) {
+            // 复制图片对象，调用方之后修改原对象（例如后台任务填充尺寸）不影响缓存
+            List<PostImage> copies = new ArrayList<>(images.size());
+            boolean complete = true;
+            for (PostImage postImage : images) {
+                copies.add(copy(postImage));
+                complete &= postImage.getWidth() != null
+                        || (postImage.getVariantAttempts() != null && postImage.getVariantAttempts() >= maxAttempts);
+            }
+            this.images = Collections.unmodifiableList(copies);
+            this.complete = complete;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+}
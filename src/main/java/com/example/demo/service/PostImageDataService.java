@@ -0,0 +1,243 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.PostImageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 动态图片二进制数据服务
+ * post_image.image_data 中的图片按段读取：输出时每次只读取一段写入响应，不把整张图片读入内存；
+ * 迁移时多个线程并行把图片写入按内容寻址的文件，更新 image_path 后清空 image_data。
+ */
+@Service
+public class PostImageDataService {
+
+    private static final Logger log = LoggerFactory.getLogger(PostImageDataService.class);
+
+    // 迁移时每次查询的图片数量
+    private static final int MIGRATE_BATCH_SIZE = 200;
+
+    @Autowired
+    private PostImageRepository postImageRepository;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private PostImageCache postImageCache;
+
+    // 每次读取的字节数
+    @Value("${post.image.data.chunk-bytes:262144}")
+    private int chunkBytes;
+
+    @Value("${post.image.data.migrate-on-startup:false}")
+    private boolean migrateOnStartup;
+
+    @Value("${post.image.data.migrate-workers:4}")
+    private int migrateWorkers;
+
+    /**
+     * 查询图片二进制数据的长度，没有二进制数据时返回null
+     */
+    public Long getLength(Long imageId) {
+        return postImageRepository.findImageDataLength(imageId);
+    }
+
+    /**
+     * 把图片二进制数据按段写入输出流
+     * @param start 起始位置（从0开始）
+     * @param length 写出的字节数
+     * @throws IOException 数据在读取过程中被迁移或删除，写出的字节数少于 length
+     */
+    public void copyTo(Long imageId, long start, long length, OutputStream out) throws IOException {
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+            int chunk = (int) Math.min(chunkBytes, remaining);
+            long copied = postImageRepository.copyImageDataChunk(imageId, position, chunk, out);
+            if (copied <= 0) {
+                throw new IOException("图片数据在读取过程中被迁移或删除，已写出 " + (length - remaining) + "/" + length + " 字节");
+            }
+            position += copied;
+            remaining -= copied;
+        }
+    }
+
+    /**
+     * 读取图片开头的字节（用于识别图片类型）
+     */
+    public byte[] readHead(Long imageId, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        postImageRepository.copyImageDataChunk(imageId, 0, length, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 启动后在后台迁移（需开启 post.image.data.migrate-on-startup）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (!migrateOnStartup) {
+            return;
+        }
+        Thread thread = new Thread(this::migrate, "post-image-data-migrate");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 把所有仍保存在数据库中的图片迁移为文件
+     * 按ID分页查询，每页拆给多个线程并行处理；单张失败只记录日志，下次迁移时重试。
+     * 清空列后表空间不会自动收缩，需要时手动执行 OPTIMIZE TABLE post_image。
+     * @return 迁移成功的图片数
+     */
+    public int migrate() {
+        long start = System.currentTimeMillis();
+        AtomicInteger migrated = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, migrateWorkers));
+        try {
+            long afterId = 0;
+            while (true) {
+                List<Long> ids = postImageRepository.findIdsWithImageData(afterId, MIGRATE_BATCH_SIZE);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                afterId = ids.get(ids.size() - 1);
+
+                List<Future<?>> futures = new ArrayList<>();
+                for (List<Long> part : partition(ids, migrateWorkers)) {
+                    futures.add(executor.submit(() -> {
+                        for (Long imageId : part) {
+                            try {
+                                bytes.addAndGet(migrateOne(imageId));
+                                migrated.incrementAndGet();
+                            } catch (Exception e) {
+                                failed.incrementAndGet();
+                                log.warn("图片 {} 迁移失败：{}", imageId, e.getMessage());
+                            }
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                if (ids.size() < MIGRATE_BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("图片数据迁移中断：{}", e.getMessage());
+        } finally {
+            executor.shutdownNow();
+            // 迁移修改了图片路径
+            if (migrated.get() > 0) {
+                postImageCache.clear();
+            }
+        }
+        log.info("图片数据迁移完成：成功 {} 张（{} 字节），失败 {} 张，耗时 {} ms",
+                migrated.get(), bytes.get(), failed.get(), System.currentTimeMillis() - start);
+        return migrated.get();
+    }
+
+    /**
+     * 迁移一张图片，返回迁移的字节数
+     */
+    private long migrateOne(Long imageId) throws IOException {
+        Long length = postImageRepository.findImageDataLength(imageId);
+        if (length == null) {
+            return 0;
+        }
+        String imagePath;
+        try (InputStream in = new ChunkedImageDataStream(imageId, length)) {
+            imagePath = imageStorageService.importPostImage(in);
+        }
+        return postImageRepository.moveImageDataToFile(imageId, imagePath) > 0 ? length : 0;
+    }
+
+    private static List<List<Long>> partition(List<Long> ids, int parts) {
+        int size = Math.max(1, (ids.size() + parts - 1) / Math.max(1, parts));
+        List<List<Long>> result = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += size) {
+            result.add(ids.subList(i, Math.min(ids.size(), i + size)));
+        }
+        return result;
+    }
+
+    /**
+     * 按段读取图片二进制数据的输入流
+     */
+    private final class ChunkedImageDataStream extends InputStream {
+        private final Long imageId;
+        private final long length;
+        private long position = 0;
+        private byte[] chunk = new byte[0];
+        private int chunkOffset = 0;
+
+        private ChunkedImageDataStream(Long imageId, long length) {
+            this.imageId = imageId;
+            this.length = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return chunk[chunkOffset++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.length - chunkOffset);
+            System.arraycopy(chunk, chunkOffset, b, off, count);
+            chunkOffset += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            if (chunkOffset < chunk.length) {
+                return true;
+            }
+            if (position >= length) {
+                return false;
+            }
+            int size = (int) Math.min(chunkBytes, length - position);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+            postImageRepository.copyImageDataChunk(imageId, position, size, out);
+            if (out.size() == 0) {
+                throw new IOException("图片数据读取不完整");
+            }
+            chunk = out.toByteArray();
+            chunkOffset = 0;
+            position += chunk.length;
+            return true;
+        }
+    }
+}
@@ -4,15 +4,27 @@ import com.example.demo.dto.PageRequest;
 import com.example.demo.dto.PageResponse;
 import com.example.demo.entity.Post;
 import com.example.demo.entity.PostImage;
-import com.example.demo.repository.FriendRepository;
+import com.example.demo.entity.PostImageVariant;
 import com.example.demo.repository.PostImageRepository;
+import com.example.demo.repository.PostImageVariantRepository;
 import com.example.demo.repository.PostRepository;
+import com.example.demo.util.ImagePaths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 动态服务层
@@ -20,6 +32,11 @@ import java.util.List;
 @Service
 public class PostService {
 
+    private static final Logger log = LoggerFactory.getLogger(PostService.class);
+
+    // 每条动态最多的图片数
+    public static final int MAX_IMAGES_PER_POST = 9;
+
     @Autowired
     private PostRepository postRepository;
 
@@ -27,52 +44,168 @@ public class PostService {
     private PostImageRepository postImageRepository;
 
     @Autowired
-    private FriendRepository friendRepository;
+    private FriendService friendService;
+
+    @Autowired
+    private ImageVariantService imageVariantService;
+
+    @Autowired
+    private ImageStorageService imageStorageService;
+
+    @Autowired
+    private PostImageCache postImageCache;
+
+    @Autowired
+    private PostImageVariantRepository postImageVariantRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${upload.root:uploads}")
+    private String uploadRoot;
 
     /**
      * 创建动态
      * @param userId 用户ID
      * @param content 动态内容
-     * @param imagePaths 图片路径列表（本地相对路径）
+     * @param imagePaths 图片路径列表（本地相对路径，保存前按 ImagePaths 规范化）
      * @return 创建成功的动态
      */
     public Post createPost(Long userId, String content, List<String> imagePaths) {
-        // 创建动态
-        Post post = new Post();
-        post.setUserId(userId);
-        post.setContent(content);
-        post.setLike(0); // 默认点赞数为0
-        post.setCreateTime(LocalDateTime.now());
-        
-        Post savedPost = postRepository.save(post);
-
         // 处理图片路径
-        if (imagePaths != null && !imagePaths.isEmpty()) {
-            List<PostImage> postImages = new ArrayList<>();
+        List<PostImage> postImages = new ArrayList<>();
+        if (imagePaths != null) {
             int sortOrder = 0;
-
             for (String imagePath : imagePaths) {
                 if (imagePath != null && !imagePath.trim().isEmpty()) {
                     // 创建图片记录
                     PostImage postImage = new PostImage();
-                    postImage.setPostId(savedPost.getId());
-                    postImage.setImagePath(imagePath.trim());
+                    postImage.setImagePath(ImagePaths.canonical(imagePath, uploadRoot));
                     postImage.setSortOrder(sortOrder++);
                     postImage.setCreateTime(LocalDateTime.now());
-                    
+
                     postImages.add(postImage);
                 }
             }
+        }
+
+        // 动态和图片记录在一个事务中保存，其他请求不会查到没有图片的新动态
+        Post savedPost = transactionTemplate.execute(status -> {
+            // 创建动态
+            Post post = new Post();
+            post.setUserId(userId);
+            post.setContent(content);
+            post.setLike(0); // 默认点赞数为0
+            post.setCreateTime(LocalDateTime.now());
+            Post saved = postRepository.save(post);
 
             // 批量保存图片记录
             if (!postImages.isEmpty()) {
+                for (PostImage postImage : postImages) {
+                    postImage.setPostId(saved.getId());
+                }
                 postImageRepository.saveBatch(postImages);
             }
+            return saved;
+        });
+
+        postImageCache.put(savedPost.getId(), postImages);
+        if (!postImages.isEmpty()) {
+            // 后台生成缩略图
+            imageVariantService.submit(postImages);
         }
+        return savedPost;
+    }
 
+    /**
+     * 创建带图片的动态（图片随请求一起上传）
+     * 每张图片在单独的虚拟线程中校验、计算哈希保存并生成缩略图（解码数受 ImageVariantService 的许可限制），全部图片保存成功后
+     * 才在一个事务中写入动态、图片和缩略图记录；任意一张失败时不创建动态。
+     * 缩略图生成失败（例如无法解码的格式）不影响发布，由后台补全任务重试。
+     * @param userId 用户ID
+     * @param content 动态内容
+     * @param files 图片文件（最多9张）
+     * @return 创建成功的动态
+     */
+    public Post createPostWithImages(Long userId, String content, List<MultipartFile> files) throws IOException {
+        if (files == null || files.isEmpty()) {
+            throw new RuntimeException("请选择要上传的图片");
+        }
+        if (files.size() > MAX_IMAGES_PER_POST) {
+            throw new RuntimeException("单次最多上传" + MAX_IMAGES_PER_POST + "张图片");
+        }
+
+        List<PostImage> postImages = new ArrayList<>();
+        List<List<PostImageVariant>> variants = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<PreparedImage>> futures = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                MultipartFile file = files.get(i);
+                int sortOrder = i;
+                futures.add(executor.submit(() -> prepareImage(file, sortOrder)));
+            }
+            for (Future<PreparedImage> future : futures) {
+                PreparedImage prepared = future.get();
+                postImages.add(prepared.postImage);
+                variants.add(prepared.variants);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("图片处理被中断");
+        } catch (ExecutionException e) {
+            // 已保存的图片可能与其他动态共用，不在这里删除，未被引用的由清理任务回收
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+
+        Post savedPost = transactionTemplate.execute(status -> {
+            Post post = new Post();
+            post.setUserId(userId);
+            post.setContent(content);
+            post.setLike(0);
+            post.setCreateTime(LocalDateTime.now());
+            Post saved = postRepository.save(post);
+
+            for (PostImage postImage : postImages) {
+                postImage.setPostId(saved.getId());
+            }
+            postImageRepository.saveBatch(postImages);
+
+            List<PostImageVariant> allVariants = new ArrayList<>();
+            for (int i = 0; i < postImages.size(); i++) {
+                for (PostImageVariant variant : variants.get(i)) {
+                    variant.setPostImageId(postImages.get(i).getId());
+                    allVariants.add(variant);
+                }
+            }
+            postImageVariantRepository.saveOrUpdateBatch(allVariants);
+            return saved;
+        });
+
+        postImageCache.put(savedPost.getId(), postImages);
         return savedPost;
     }
 
+    /**
+     * 保存一张上传的图片并生成缩略图
+     */
+    private PreparedImage prepareImage(MultipartFile file, int sortOrder) throws IOException {
+        PostImage postImage = new PostImage();
+        postImage.setImagePath(imageStorageService.storePostImage(file));
+        postImage.setSortOrder(sortOrder);
+        postImage.setCreateTime(LocalDateTime.now());
+
+        List<PostImageVariant> variants = new ArrayList<>();
+        try {
+            variants = imageVariantService.generateNow(postImage);
+        } catch (Exception e) {
+            log.warn("图片 {} 生成缩略图失败，留给后台补全：{}", postImage.getImagePath(), e.getMessage());
+        }
+        return new PreparedImage(postImage, variants);
+    }
+
     /**
      * 根据ID查找动态
      */
@@ -102,8 +235,8 @@ public class PostService {
      * @return 分页响应（好友动态和自己的动态在前，非好友动态在后，都按时间倒序）
      */
     public PageResponse<Post> getPostList(Long userId, PageRequest pageRequest) {
-        // 获取用户的好友ID列表
-        List<Long> friendIds = friendRepository.findFriendIdsByUserId(userId);
+        // 获取用户的好友ID列表（内存好友图）
+        List<Long> friendIds = friendService.getFriendIds(userId);
         
         // 将自己的ID也加入到好友列表中，这样自己的动态会和好友动态一起优先展示
         List<Long> friendIdsIncludingSelf = new ArrayList<>(friendIds);
@@ -204,5 +337,17 @@ public class PostService {
         return postRepository.findById(postId)
                 .orElseThrow(() -> new RuntimeException("帖子不存在"));
     }
-}
 
+    /**
+     * 已保存并生成缩略图的图片（还没有写入记录）
+     */
+    private static final class PreparedImage {
+        private final PostImage postImage;
+        private final List<PostImageVariant> variants;
+
+        private PreparedImage(PostImage postImage, List<PostImageVariant> variants) {
+            this.postImage = postImage;
+            this.variants = variants;
+        }
+    }
+}
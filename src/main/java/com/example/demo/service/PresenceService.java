@@ -0,0 +1,196 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.UserRepository;
+import com.example.demo.util.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 在线状态服务
+ * 在线状态保存在内存中（用户ID -> 最后心跳时间），超时未心跳的用户由时间轮过期为离线，
+ * 状态变化合并后批量写回 user.is_logging，登录/退出/心跳都不再同步写数据库。
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceService.class);
+
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${presence.timeout-seconds:90}")
+    private long timeoutSeconds;
+
+    @Value("${presence.tick-ms:1000}")
+    private long tickMillis;
+
+    @Value("${presence.reset-on-startup:false}")
+    private boolean resetOnStartup;
+
+    // 用户ID -> 最后心跳时间（毫秒）
+    private final ConcurrentHashMap<Long, Long> lastHeartbeat = new ConcurrentHashMap<>();
+
+    // 待写回数据库的状态变化（用户ID -> is_logging），同一用户多次变化只保留最后一次
+    private final ConcurrentHashMap<Long, Integer> pendingStatus = new ConcurrentHashMap<>();
+
+    private TimingWheel timingWheel;
+
+    @PostConstruct
+    public void init() {
+        timingWheel = new TimingWheel(tickMillis, timeoutSeconds * 1000, System.currentTimeMillis());
+        // 内存状态在重启后为空，单实例部署时数据库中残留的在线标记已经失效；
+        // 多实例部署时其他实例的在线用户仍然有效，不能重置
+        if (resetOnStartup) {
+            userRepository.resetLoginStatus();
+        }
+    }
+
+    /**
+     * 标记用户上线（登录）
+     * @param userId 用户ID
+     */
+    public void online(Long userId) {
+        heartbeat(userId);
+    }
+
+    /**
+     * 记录用户心跳，不在线的用户会被标记为上线
+     * @param userId 用户ID
+     */
+    public void heartbeat(Long userId) {
+        long now = System.currentTimeMillis();
+        if (lastHeartbeat.put(userId, now) == null) {
+            pendingStatus.put(userId, 1);
+        }
+        timingWheel.schedule(userId, now + timeoutSeconds * 1000);
+    }
+
+    /**
+     * 标记用户离线（退出登录）
+     * @param userId 用户ID
+     */
+    public void offline(Long userId) {
+        lastHeartbeat.remove(userId);
+        timingWheel.cancel(userId);
+        pendingStatus.put(userId, 0);
+    }
+
+    /**
+     * 判断用户是否在线
+     */
+    public boolean isOnline(Long userId) {
+        return userId != null && lastHeartbeat.containsKey(userId);
+    }
+
+    /**
+     * 从给定的用户ID中筛选出在线的用户（保持原顺序）
+     */
+    public Set<Long> filterOnline(Collection<Long> userIds) {
+        Set<Long> online = new LinkedHashSet<>();
+        for (Long userId : userIds) {
+            if (isOnline(userId)) {
+                online.add(userId);
+            }
+        }
+        return online;
+    }
+
+    /**
+     * 获取当前所有在线用户ID
+     */
+    public Set<Long> onlineUserIds() {
+        return lastHeartbeat.keySet();
+    }
+
+    /**
+     * 获取心跳超时时间（秒）
+     */
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    /**
+     * 推进时间轮，将超时未心跳的用户标记为离线
+     */
+    @Scheduled(fixedRateString = "${presence.tick-ms:1000}")
+    public void expireStaleSessions() {
+        long now = System.currentTimeMillis();
+        long timeoutMillis = timeoutSeconds * 1000;
+        for (Long userId : timingWheel.advance(now)) {
+            Long last = lastHeartbeat.get(userId);
+            if (last == null) {
+                continue;
+            }
+            if (now - last >= timeoutMillis) {
+                // 只有在期间没有新的心跳时才移除
+                if (lastHeartbeat.remove(userId, last)) {
+                    pendingStatus.put(userId, 0);
+                }
+            } else {
+                timingWheel.schedule(userId, last + timeoutMillis);
+            }
+        }
+    }
+
+    /**
+     * 将合并后的状态变化批量写回数据库
+     */
+    @Scheduled(fixedDelayString = "${presence.flush-interval-ms:2000}")
+    public void flush() {
+        if (pendingStatus.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Integer> drained = new HashMap<>();
+        List<Long> onlineIds = new ArrayList<>();
+        List<Long> offlineIds = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : pendingStatus.entrySet()) {
+            // 只移除读到的值，期间被覆盖的新状态留到下一轮
+            if (pendingStatus.remove(entry.getKey(), entry.getValue())) {
+                drained.put(entry.getKey(), entry.getValue());
+                if (entry.getValue() == 1) {
+                    onlineIds.add(entry.getKey());
+                } else {
+                    offlineIds.add(entry.getKey());
+                }
+            }
+        }
+
+        try {
+            writeInBatches(onlineIds, 1);
+            writeInBatches(offlineIds, 0);
+        } catch (Exception e) {
+            log.warn("在线状态写回失败，将在下一轮重试：{}", e.getMessage());
+            drained.forEach(pendingStatus::putIfAbsent);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    private void writeInBatches(List<Long> userIds, int isLogging) {
+        for (int from = 0; from < userIds.size(); from += FLUSH_BATCH_SIZE) {
+            List<Long> batch = userIds.subList(from, Math.min(from + FLUSH_BATCH_SIZE, userIds.size()));
+            userRepository.batchUpdateLoginStatus(batch, isLogging);
+        }
+    }
+}
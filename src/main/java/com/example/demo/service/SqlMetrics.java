@@ -0,0 +1,210 @@
+package com.example.demo.service;
+
+import com.example.demo.util.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SQL 执行统计
+ * 按查询名（调用 SQL 的 Repository 方法，例如 PostRepository.findFriendPosts）记录调用次数、耗时直方图、
+ * 返回或影响的行数和失败次数；超过阈值的语句记录慢查询日志（只记录参数类型，不记录参数值）。
+ * 请求中执行的语句数记在请求属性 STATEMENT_COUNTER_ATTRIBUTE 的计数器上（由 EndpointMetricsFilter 放入），
+ * 不为每个线程（包括每个虚拟线程）分配状态；不在请求线程中执行的语句不计入。
+ */
+@Component
+public class SqlMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlMetrics.class);
+
+    // 统计的查询名上限，超过后计入 other
+    private static final int MAX_QUERIES = 1000;
+
+    // 请求属性名：当前请求执行的语句数（AtomicLong）
+    public static final String STATEMENT_COUNTER_ATTRIBUTE = SqlMetrics.class.getName() + ".statements";
+
+    private static final String REPOSITORY_PACKAGE = "com.example.demo.repository.";
+    private static final String APPLICATION_PACKAGE = "com.example.demo.";
+
+    // 不作为查询名的类（统计代码本身，包括内部类）
+    private static final List<String> SKIPPED_PREFIXES = List.of(
+            SqlMetrics.class.getName(), SqlMetricsDataSourcePostProcessor.class.getName());
+
+    @Value("${sql.metrics.slow-threshold-ms:200}")
+    private long slowThresholdMillis;
+
+    private final ConcurrentHashMap<String, QueryStats> queries = new ConcurrentHashMap<>();
+
+    private final StackWalker walker = StackWalker.getInstance();
+
+    /**
+     * 从调用栈找出查询名：优先取 repository 包中的方法，其次取应用中的第一个方法
+     */
+    public String resolveQueryName() {
+        return walker.walk(frames -> {
+            String fallback = null;
+            for (StackWalker.StackFrame frame : (Iterable<StackWalker.StackFrame>) frames::iterator) {
+                String className = frame.getClassName();
+                if (!className.startsWith(APPLICATION_PACKAGE) || className.contains("$$") || isSkipped(className)) {
+                    continue;
+                }
+                String name = simpleName(className) + "." + methodName(frame.getMethodName());
+                if (className.startsWith(REPOSITORY_PACKAGE)) {
+                    return name;
+                }
+                if (fallback == null) {
+                    fallback = name;
+                }
+            }
+            return fallback != null ? fallback : "unknown";
+        });
+    }
+
+    private static boolean isSkipped(String className) {
+        for (String prefix : SKIPPED_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 类名去掉包名和内部类后缀（PostImageRepository$1 -> PostImageRepository）
+     */
+    private static String simpleName(String className) {
+        String simple = className.substring(className.lastIndexOf('.') + 1);
+        int dollar = simple.indexOf('$');
+        return dollar > 0 ? simple.substring(0, dollar) : simple;
+    }
+
+    /**
+     * lambda 方法名还原为所在的方法名（lambda$saveBatch$0 -> saveBatch）
+     */
+    private static String methodName(String methodName) {
+        if (methodName.startsWith("lambda$")) {
+            int end = methodName.indexOf('$', "lambda$".length());
+            return end > 0 ? methodName.substring("lambda$".length(), end) : methodName;
+        }
+        return methodName;
+    }
+
+    /**
+     * 记录一次执行
+     * @param queryName 查询名
+     * @param sql SQL 语句
+     * @param nanos 耗时（纳秒）
+     * @param rows 影响的行数（查询的返回行数在读取结果后通过 addRows 记录），未知时为0
+     * @param failed 是否失败
+     * @param parameterTypes 参数类型
+     */
+    public void record(String queryName, String sql, long nanos, long rows, boolean failed, List<String> parameterTypes) {
+        countStatement();
+        QueryStats stats = stats(queryName, sql);
+        stats.latency.record(nanos);
+        if (rows > 0) {
+            stats.rows.add(rows);
+        }
+        if (failed) {
+            stats.errors.increment();
+        }
+        long millis = nanos / 1_000_000;
+        if (millis >= slowThresholdMillis) {
+            log.warn("慢查询 {} 耗时 {} ms，参数 {}，SQL：{}", queryName, millis, parameterTypes, compact(sql));
+        }
+    }
+
+    /**
+     * 当前请求的语句数加一（不在请求中或请求没有计数器时不处理）
+     */
+    private static void countStatement() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null
+                && attributes.getAttribute(STATEMENT_COUNTER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST) instanceof AtomicLong counter) {
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录查询返回的行数
+     */
+    public void addRows(String queryName, String sql, long rows) {
+        if (rows > 0) {
+            stats(queryName, sql).rows.add(rows);
+        }
+    }
+
+    /**
+     * 统计汇总（按累计耗时降序），耗时单位为毫秒
+     */
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<String, QueryStats> entry : queries.entrySet()) {
+            QueryStats stats = entry.getValue();
+            LatencyHistogram latency = stats.latency;
+            long count = latency.getCount();
+            Map<String, Object> item = new HashMap<>();
+            item.put("query", entry.getKey());
+            item.put("sql", stats.sql);
+            item.put("count", count);
+            item.put("errors", stats.errors.sum());
+            item.put("rows", stats.rows.sum());
+            item.put("rowsPerCall", count == 0 ? 0 : (double) stats.rows.sum() / count);
+            item.put("totalMs", latency.getSum() / 1_000_000.0);
+            item.put("meanMs", latency.getMean() / 1_000_000.0);
+            item.put("p50Ms", latency.percentile(50) / 1_000_000.0);
+            item.put("p99Ms", latency.percentile(99) / 1_000_000.0);
+            item.put("maxMs", latency.getMax() / 1_000_000.0);
+            result.add(item);
+        }
+        result.sort((a, b) -> Double.compare((Double) b.get("totalMs"), (Double) a.get("totalMs")));
+        return result;
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        queries.clear();
+    }
+
+    private QueryStats stats(String queryName, String sql) {
+        QueryStats stats = queries.get(queryName);
+        if (stats == null) {
+            String key = queries.size() < MAX_QUERIES ? queryName : "other";
+            stats = queries.computeIfAbsent(key, k -> new QueryStats(compact(sql)));
+        }
+        return stats;
+    }
+
+    private static String compact(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        String compacted = sql.replaceAll("\\s+", " ").trim();
+        return compacted.length() > 500 ? compacted.substring(0, 500) + "..." : compacted;
+    }
+
+    private static final class QueryStats {
+        // 第一次记录时的 SQL（同一方法可能拼接出不同的 IN 列表）
+        private final String sql;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        private QueryStats(String sql) {
+            this.sql = sql;
+        }
+    }
+}
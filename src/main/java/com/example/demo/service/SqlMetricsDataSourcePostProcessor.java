@@ -0,0 +1,240 @@
+package com.example.demo.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 为 DataSource 加上 SQL 统计代理
+ * Connection、Statement、ResultSet 均为 JDK 动态代理：创建语句时从调用栈取查询名，
+ * 执行时计时并记录绑定参数的类型，读取结果集时统计行数，关闭结果集时汇总到 SqlMetrics。
+ * unwrap / isWrapperFor 直接判断被代理对象，连接池等原始对象仍可通过 unwrap 取得。
+ */
+@Component
+public class SqlMetricsDataSourcePostProcessor implements BeanPostProcessor {
+
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    @Autowired
+    private ObjectProvider<SqlMetrics> sqlMetricsProvider;
+
+    @Value("${sql.metrics.enabled:true}")
+    private boolean enabled;
+
+    private volatile SqlMetrics sqlMetrics;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!enabled || !(bean instanceof DataSource) || isMetricsProxy(bean)) {
+            return bean;
+        }
+        Class<?>[] interfaces = ClassUtils.getAllInterfacesForClass(bean.getClass(), bean.getClass().getClassLoader());
+        return Proxy.newProxyInstance(bean.getClass().getClassLoader(), interfaces, new DataSourceHandler((DataSource) bean));
+    }
+
+    private SqlMetrics metrics() {
+        SqlMetrics metrics = sqlMetrics;
+        if (metrics == null) {
+            metrics = sqlMetricsProvider.getObject();
+            sqlMetrics = metrics;
+        }
+        return metrics;
+    }
+
+    private static boolean isMetricsProxy(Object bean) {
+        return Proxy.isProxyClass(bean.getClass()) && Proxy.getInvocationHandler(bean) instanceof DataSourceHandler;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(SqlMetricsDataSourcePostProcessor.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    /**
+     * 调用被代理对象，unwrap / isWrapperFor 先判断被代理对象本身
+     */
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (args != null && args.length == 1 && args[0] instanceof Class<?> type) {
+            if (name.equals("unwrap") && type.isInstance(target)) {
+                return target;
+            }
+            if (name.equals("isWrapperFor") && type.isInstance(target)) {
+                return true;
+            }
+        }
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class DataSourceHandler implements InvocationHandler {
+        private final DataSource target;
+
+        private DataSourceHandler(DataSource target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = delegate(target, method, args);
+            if (method.getName().equals("getConnection") && result instanceof Connection connection) {
+                return proxy(Connection.class, new ConnectionHandler(connection));
+            }
+            return result;
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            Object result = delegate(target, method, args);
+            if (name.equals("prepareStatement") || name.equals("prepareCall") || name.equals("createStatement")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                StatementHandler handler = new StatementHandler((Statement) result, sql, metrics().resolveQueryName());
+                if (result instanceof CallableStatement) {
+                    return proxy(CallableStatement.class, handler);
+                }
+                if (result instanceof PreparedStatement) {
+                    return proxy(PreparedStatement.class, handler);
+                }
+                return proxy(Statement.class, handler);
+            }
+            return result;
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String queryName;
+        private String sql;
+
+        // 按参数位置记录的类型
+        private final List<String> parameterTypes = new ArrayList<>();
+
+        private StatementHandler(Statement target, String sql, String queryName) {
+            this.target = target;
+            this.sql = sql;
+            this.queryName = queryName;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                recordParameter(index, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                parameterTypes.clear();
+            }
+
+            if (!EXECUTE_METHODS.contains(name)) {
+                Object result = delegate(target, method, args);
+                if (name.equals("getResultSet") && result instanceof ResultSet resultSet) {
+                    return proxy(ResultSet.class, new ResultSetHandler(resultSet, queryName, sql));
+                }
+                return result;
+            }
+
+            if (args != null && args.length > 0 && args[0] instanceof String s) {
+                sql = s;
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = delegate(target, method, args);
+            } catch (Throwable e) {
+                metrics().record(queryName, sql, System.nanoTime() - start, 0, true, parameterTypes);
+                throw e;
+            }
+            metrics().record(queryName, sql, System.nanoTime() - start, affectedRows(result), false, parameterTypes);
+            if (result instanceof ResultSet resultSet) {
+                return proxy(ResultSet.class, new ResultSetHandler(resultSet, queryName, sql));
+            }
+            return result;
+        }
+
+        private void recordParameter(int index, Object value) {
+            while (parameterTypes.size() < index) {
+                parameterTypes.add("?");
+            }
+            parameterTypes.set(index - 1, value == null ? "null" : value.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * 更新语句影响的行数（批量执行时为各语句之和，驱动返回未知时不计）
+     */
+    private static long affectedRows(Object result) {
+        if (result instanceof Integer count) {
+            return Math.max(0, count);
+        }
+        if (result instanceof Long count) {
+            return Math.max(0, count);
+        }
+        long total = 0;
+        if (result instanceof int[] counts) {
+            for (int count : counts) {
+                total += Math.max(0, count);
+            }
+        } else if (result instanceof long[] counts) {
+            for (long count : counts) {
+                total += Math.max(0, count);
+            }
+        }
+        return total;
+    }
+
+    private final class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final String queryName;
+        private final String sql;
+        private long rows = 0;
+        private boolean reported = false;
+
+        private ResultSetHandler(ResultSet target, String queryName, String sql) {
+            this.target = target;
+            this.queryName = queryName;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = delegate(target, method, args);
+            String name = method.getName();
+            if (name.equals("next") && Boolean.TRUE.equals(result)) {
+                rows++;
+            } else if (name.equals("close") && !reported) {
+                reported = true;
+                metrics().addRows(queryName, sql, rows);
+            }
+            return result;
+        }
+    }
+}
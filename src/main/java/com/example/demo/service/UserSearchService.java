@@ -0,0 +1,258 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.PageRequest;
+import com.example.demo.dto.PageResponse;
+import com.example.demo.entity.User;
+import com.example.demo.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户搜索服务
+ * 启动时从 user 表构建内存 n-gram 倒排索引（单字 + 二元组），注册和修改资料时增量更新，
+ * 搜索时先用倒排表求交集得到候选，再做子串校验和排序，避免 LIKE '%x%' 全表扫描。
+ */
+@Service
+public class UserSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSearchService.class);
+
+    // 排序权重：用户名完全匹配 > 用户名前缀 > 用户名包含 > 签名/地区包含
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_CONTAINS = 2;
+    private static final int RANK_OTHER_FIELD = 3;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // 用户ID -> 已索引的字段
+    private final ConcurrentHashMap<Long, IndexedUser> documents = new ConcurrentHashMap<>();
+
+    // n-gram -> 包含该 n-gram 的用户ID集合
+    private final ConcurrentHashMap<String, Set<Long>> postings = new ConcurrentHashMap<>();
+
+    private volatile boolean ready = false;
+
+    /**
+     * 启动后从数据库加载全部用户构建索引
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        // 加载期间增量更新写入的数据更新，不被加载的旧数据覆盖
+        userRepository.forEachSearchFields(user -> index(user, false));
+        ready = true;
+        log.info("用户搜索索引加载完成：{} 个用户，{} 个n-gram，耗时 {} ms",
+                documents.size(), postings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 索引或更新用户（注册、修改用户名、修改资料后调用）
+     * @param user 用户（至少包含ID和用户名）
+     */
+    public void index(User user) {
+        index(user, true);
+    }
+
+    /**
+     * 搜索用户
+     * @param keyword 关键字（匹配用户名、个性签名、地区）
+     * @param pageRequest 分页请求
+     * @return 按相关度排序的用户ID分页结果
+     */
+    public PageResponse<Long> search(String keyword, PageRequest pageRequest) {
+        if (!ready) {
+            throw new RuntimeException("搜索索引正在加载，请稍后重试");
+        }
+        String query = normalize(keyword);
+        if (query == null) {
+            throw new RuntimeException("搜索关键字不能为空");
+        }
+
+        List<Hit> hits = new ArrayList<>();
+        for (Long userId : candidates(query)) {
+            IndexedUser doc = documents.get(userId);
+            if (doc == null) {
+                continue;
+            }
+            int rank = doc.rank(query);
+            if (rank >= 0) {
+                hits.add(new Hit(doc, rank));
+            }
+        }
+
+        hits.sort(Comparator.comparingInt((Hit hit) -> hit.rank)
+                .thenComparingInt(hit -> hit.doc.username.length())
+                .thenComparingLong(hit -> hit.doc.id));
+
+        int from = Math.min(pageRequest.getOffset(), hits.size());
+        int to = Math.min(from + pageRequest.getSize(), hits.size());
+        List<Long> pageIds = new ArrayList<>(to - from);
+        for (Hit hit : hits.subList(from, to)) {
+            pageIds.add(hit.doc.id);
+        }
+        return new PageResponse<>(pageIds, pageRequest.getPage(), pageRequest.getSize(), (long) hits.size());
+    }
+
+    private synchronized void index(User user, boolean overwrite) {
+        if (user == null || user.getId() == null || user.getUsername() == null) {
+            return;
+        }
+        IndexedUser previous = documents.get(user.getId());
+        if (previous != null && !overwrite) {
+            return;
+        }
+
+        IndexedUser doc = new IndexedUser(user.getId(), user.getUsername(),
+                normalize(user.getSignature()), normalize(user.getLocation()));
+        Set<String> newGrams = doc.grams();
+        Set<String> oldGrams = previous != null ? previous.grams() : Set.of();
+
+        for (String gram : oldGrams) {
+            if (!newGrams.contains(gram)) {
+                Set<Long> ids = postings.get(gram);
+                if (ids != null) {
+                    ids.remove(doc.id);
+                    if (ids.isEmpty()) {
+                        postings.remove(gram, ids);
+                    }
+                }
+            }
+        }
+        for (String gram : newGrams) {
+            postings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(doc.id);
+        }
+        documents.put(doc.id, doc);
+    }
+
+    /**
+     * 用查询词的 n-gram 倒排表求交集得到候选用户
+     */
+    private Set<Long> candidates(String query) {
+        List<Set<Long>> lists = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Set<Long> ids = postings.get(gram);
+            if (ids == null) {
+                return Set.of();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> result = new HashSet<>();
+        for (Long id : lists.get(0)) {
+            boolean inAll = true;
+            for (int i = 1; i < lists.size() && inAll; i++) {
+                inAll = lists.get(i).contains(id);
+            }
+            if (inAll) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 单字查询使用单字索引，其余使用二元组
+     */
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        if (text.length() == 1) {
+            grams.add(text);
+            return grams;
+        }
+        for (int i = 0; i + 2 <= text.length(); i++) {
+            grams.add(text.substring(i, i + 2));
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        String normalized = text.trim().toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+
+    /**
+     * 已索引的用户字段（小写）
+     */
+    private static final class IndexedUser {
+        private final long id;
+        private final String username;
+        private final String usernameLower;
+        private final String signature;
+        private final String location;
+
+        private IndexedUser(long id, String username, String signature, String location) {
+            this.id = id;
+            this.username = username;
+            this.usernameLower = username.toLowerCase(Locale.ROOT);
+            this.signature = signature;
+            this.location = location;
+        }
+
+        private Set<String> grams() {
+            Set<String> grams = new HashSet<>();
+            addGrams(grams, usernameLower);
+            addGrams(grams, signature);
+            addGrams(grams, location);
+            return grams;
+        }
+
+        private static void addGrams(Set<String> grams, String text) {
+            if (text == null) {
+                return;
+            }
+            for (int i = 0; i < text.length(); i++) {
+                grams.add(text.substring(i, i + 1));
+                if (i + 2 <= text.length()) {
+                    grams.add(text.substring(i, i + 2));
+                }
+            }
+        }
+
+        /**
+         * 计算匹配等级，不匹配返回-1
+         */
+        private int rank(String query) {
+            if (usernameLower.equals(query)) {
+                return RANK_EXACT;
+            }
+            if (usernameLower.startsWith(query)) {
+                return RANK_PREFIX;
+            }
+            if (usernameLower.contains(query)) {
+                return RANK_CONTAINS;
+            }
+            if ((signature != null && signature.contains(query)) || (location != null && location.contains(query))) {
+                return RANK_OTHER_FIELD;
+            }
+            return -1;
+        }
+    }
+
+    private static final class Hit {
+        private final IndexedUser doc;
+        private final int rank;
+
+        private Hit(IndexedUser doc, int rank) {
+            this.doc = doc;
+            this.rank = rank;
+        }
+    }
+}
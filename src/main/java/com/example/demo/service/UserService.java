@@ -8,6 +8,7 @@ import com.example.demo.dto.UpdateUserInfoRequest;
 import com.example.demo.entity.User;
 import com.example.demo.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
@@ -22,6 +23,18 @@ public class UserService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PresenceService presenceService;
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private UsernameAvailabilityService usernameAvailabilityService;
+
+    @Autowired
+    private AvatarCache avatarCache;
+
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
     /**
@@ -30,8 +43,8 @@ public class UserService {
      * @return 注册成功后的用户信息（不包含密码）
      */
     public User register(RegisterRequest request) {
-        // 检查用户名是否已存在
-        if (userRepository.findByUsername(request.getUsername()).isPresent()) {
+        // 检查用户名是否已存在（布隆过滤器判定不存在时不查询数据库）
+        if (!usernameAvailabilityService.isAvailable(request.getUsername())) {
             throw new RuntimeException("用户名已存在");
         }
 
@@ -45,8 +58,19 @@ public class UserService {
         user.setLocation(null);
         user.setCreateTime(LocalDateTime.now());
         user.setIsLogging(0);
-        // 保存用户
-        return userRepository.save(user);
+        // 保存用户（并发注册同名用户时由唯一索引兜底）
+        User savedUser;
+        try {
+            savedUser = userRepository.save(user);
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("用户名已存在");
+        }
+        usernameAvailabilityService.add(savedUser.getUsername());
+
+        // 更新搜索索引
+        userSearchService.index(savedUser);
+
+        return savedUser;
     }
 
     /**
@@ -80,12 +104,11 @@ public class UserService {
             throw new RuntimeException("用户名或密码错误");
         }
 
-        // 更新登录状态为在线
-        userRepository.updateLoginStatus(user.getId(), 1);
+        // 更新登录状态为在线（内存中记录，批量写回数据库）
+        presenceService.online(user.getId());
+        user.setIsLogging(1);
 
-        // 重新查询用户信息以获取更新后的状态
-        return userRepository.findById(user.getId())
-                .orElseThrow(() -> new RuntimeException("用户不存在"));
+        return user;
     }
 
     /**
@@ -99,7 +122,19 @@ public class UserService {
         }
 
         // 更新登录状态为离线
-        userRepository.updateLoginStatus(userId, 0);
+        presenceService.offline(userId);
+    }
+
+    /**
+     * 用户心跳（保持在线状态）
+     * @param userId 用户ID
+     */
+    public void heartbeat(Long userId) {
+        // 已在线的用户不再查询数据库，只在上线时校验用户是否存在
+        if (!presenceService.isOnline(userId) && userRepository.findById(userId).isEmpty()) {
+            throw new RuntimeException("用户不存在");
+        }
+        presenceService.heartbeat(userId);
     }
 
     /**
@@ -149,16 +184,26 @@ public class UserService {
         }
 
         // 检查新用户名是否已存在
-        if (userRepository.findByUsername(request.getNewUsername()).isPresent()) {
+        if (!usernameAvailabilityService.isAvailable(request.getNewUsername())) {
             throw new RuntimeException("新用户名已被使用");
         }
 
         // 更新用户名
-        userRepository.updateUsername(user.getId(), request.getNewUsername());
+        try {
+            userRepository.updateUsername(user.getId(), request.getNewUsername());
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("新用户名已被使用");
+        }
+        usernameAvailabilityService.add(request.getNewUsername());
 
         // 返回更新后的用户信息
-        return userRepository.findById(user.getId())
+        User updatedUser = userRepository.findById(user.getId())
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
+
+        // 更新搜索索引
+        userSearchService.index(updatedUser);
+
+        return updatedUser;
     }
 
     /**
@@ -177,8 +222,10 @@ public class UserService {
         userRepository.updateAvatar(userId, avatar);
 
         // 返回更新后的用户信息
-        return userRepository.findById(userId)
+        User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
+        avatarCache.putUserAvatar(userId, user.getAvatar());
+        return user;
     }
 
     /**
@@ -194,7 +241,8 @@ public class UserService {
         // 如果更新用户名，需要检查新用户名是否已被使用
         if (request.getUsername() != null && !request.getUsername().trim().isEmpty()) {
             // 检查新用户名是否与当前用户名相同
-            if (!request.getUsername().equals(user.getUsername())) {
+            if (!request.getUsername().equals(user.getUsername())
+                    && usernameAvailabilityService.mightExist(request.getUsername())) {
                 // 检查新用户名是否已被其他用户使用
                 userRepository.findByUsername(request.getUsername()).ifPresent(existingUser -> {
                     if (!existingUser.getId().equals(request.getUserId())) {
@@ -205,18 +253,33 @@ public class UserService {
         }
 
         // 更新用户信息（只更新非空字段）
-        userRepository.updateUserInfo(
-                request.getUserId(),
-                request.getUsername(),
-                request.getAvatar(),
-                request.getSignature(),
-                request.getSex(),
-                request.getLocation()
-        );
+        try {
+            userRepository.updateUserInfo(
+                    request.getUserId(),
+                    request.getUsername(),
+                    request.getAvatar(),
+                    request.getSignature(),
+                    request.getSex(),
+                    request.getLocation()
+            );
+        } catch (DuplicateKeyException e) {
+            throw new RuntimeException("用户名已被使用");
+        }
+        if (request.getUsername() != null && !request.getUsername().trim().isEmpty()) {
+            usernameAvailabilityService.add(request.getUsername());
+        }
 
         // 返回更新后的用户信息
-        return userRepository.findById(request.getUserId())
+        User updatedUser = userRepository.findById(request.getUserId())
                 .orElseThrow(() -> new RuntimeException("用户不存在"));
+
+        // 更新搜索索引
+        userSearchService.index(updatedUser);
+        if (request.getAvatar() != null) {
+            avatarCache.putUserAvatar(updatedUser.getId(), updatedUser.getAvatar());
+        }
+
+        return updatedUser;
     }
 }
 
@@ -0,0 +1,159 @@
+package com.example.demo.service;
+
+import com.example.demo.repository.UserRepository;
+import com.example.demo.util.BloomFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 用户名可用性服务
+ * 在 uk_username 唯一索引查询前加一层布隆过滤器：过滤器判定不存在的用户名直接返回可用，
+ * 只有可能存在的用户名才查询数据库。过滤器定期重建以清理改名后残留的旧用户名。
+ * 过滤器键只近似 utf8mb4_unicode_ci 的比较规则，归一化后含有无法确认等价关系的字符的用户名不使用否定结论，直接查询数据库。
+ */
+@Service
+public class UsernameAvailabilityService {
+
+    private static final Logger log = LoggerFactory.getLogger(UsernameAvailabilityService.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${username.bloom.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private volatile BloomFilter filter;
+
+    // 重建期间新增的用户名，切换过滤器时补充进新的过滤器；不在重建时为null
+    private Set<String> addedDuringRebuild;
+
+    // 保护 filter 切换与 addedDuringRebuild：add 与切换互斥，新增的用户名不会只写进被丢弃的旧过滤器
+    private final Object swapLock = new Object();
+
+    /**
+     * 启动后及定期重建过滤器
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${username.bloom.rebuild-interval-ms:600000}",
+               fixedDelayString = "${username.bloom.rebuild-interval-ms:600000}")
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (swapLock) {
+            addedDuringRebuild = new HashSet<>();
+        }
+        try {
+            // 预留一倍容量给两次重建之间的新用户
+            BloomFilter next = new BloomFilter(userRepository.count() * 2 + 10000, falsePositiveRate);
+            userRepository.forEachUsername(username -> next.put(normalize(username)));
+
+            // 切换与补充在同一锁内完成，之后的 add 直接写入新过滤器
+            synchronized (swapLock) {
+                for (String username : addedDuringRebuild) {
+                    next.put(username);
+                }
+                filter = next;
+                addedDuringRebuild = null;
+            }
+            log.info("用户名布隆过滤器重建完成，耗时 {} ms", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("用户名布隆过滤器重建失败：{}", e.getMessage());
+        } finally {
+            synchronized (swapLock) {
+                addedDuringRebuild = null;
+            }
+        }
+    }
+
+    /**
+     * 记录新占用的用户名（注册、改名成功后调用）
+     */
+    public void add(String username) {
+        String key = normalize(username);
+        synchronized (swapLock) {
+            if (filter != null) {
+                filter.put(key);
+            }
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(key);
+            }
+        }
+    }
+
+    /**
+     * 用户名是否可能已被占用（返回false时一定未被占用）
+     */
+    public boolean mightExist(String username) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        String key = normalize(username);
+        return !isComparable(key) || current.mightContain(key);
+    }
+
+    /**
+     * 用户名是否可用
+     */
+    public boolean isAvailable(String username) {
+        if (!mightExist(username)) {
+            return true;
+        }
+        return userRepository.findByUsername(username).isEmpty();
+    }
+
+    /**
+     * 近似 utf8mb4_unicode_ci 的比较规则归一化：兼容分解后去掉重音，展开 ß、æ、œ 等多字母等价，
+     * 把带横线的字母折叠为基本字母，去掉格式字符，忽略大小写和尾部空格。
+     * 这不是完整的 UCA 实现：查询的用户名归一化后含 ASCII 与汉字以外的字符时直接查询数据库（见 isComparable）；
+     * 已注册用户名中未覆盖的拉丁扩展字母仍可能与 ASCII 用户名等价，此时可用性查询可能误报可用，
+     * 注册和改名由 uk_username 唯一索引兜底。
+     */
+    private static String normalize(String username) {
+        String decomposed = Normalizer.normalize(username, Normalizer.Form.NFKD)
+                .replaceAll("[\\p{M}\\p{Cf}]", "")
+                .toLowerCase(Locale.ROOT);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            switch (c) {
+                case 'ß' -> key.append("ss");
+                case 'æ' -> key.append("ae");
+                case 'œ' -> key.append("oe");
+                case 'þ' -> key.append("th");
+                case 'ø' -> key.append('o');
+                case 'đ', 'ð' -> key.append('d');
+                case 'ł' -> key.append('l');
+                case 'ħ' -> key.append('h');
+                case 'ŧ' -> key.append('t');
+                case 'ı' -> key.append('i');
+                default -> key.append(c);
+            }
+        }
+        return key.toString().stripTrailing();
+    }
+
+    /**
+     * 归一化后的键是否只含 ASCII 和中日韩汉字；其他字符在 utf8mb4_unicode_ci 下可能还有未覆盖的等价关系，
+     * 这类用户名的过滤器否定结论不可信
+     */
+    private static boolean isComparable(String key) {
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c >= 0x80 && Character.UnicodeScript.of(c) != Character.UnicodeScript.HAN) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
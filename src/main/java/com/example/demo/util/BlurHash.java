@@ -0,0 +1,119 @@
+package com.example.demo.util;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * BlurHash 编码
+ * 把图片压缩为由少量余弦分量组成的短字符串（4x3 分量为28个字符），客户端解码后作为图片加载前的模糊占位图。
+ * 编码耗时与像素数成正比，调用前应先把图片缩小到几十像素。
+ */
+public final class BlurHash {
+
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    private BlurHash() {
+    }
+
+    /**
+     * 编码图片
+     * @param image 已缩小的图片
+     * @param componentsX 横向分量数（1-9）
+     * @param componentsY 纵向分量数（1-9）
+     */
+    public static String encode(BufferedImage image, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > 9 || componentsY < 1 || componentsY > 9) {
+            throw new IllegalArgumentException("分量数必须在1到9之间");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] rgb = image.getRGB(0, 0, width, height, null, 0, width);
+
+        // 先把每个像素转换到线性空间，避免在分量循环中重复计算
+        double[] linear = new double[width * height * 3];
+        for (int i = 0; i < rgb.length; i++) {
+            linear[i * 3] = toLinear((rgb[i] >> 16) & 0xFF);
+            linear[i * 3 + 1] = toLinear((rgb[i] >> 8) & 0xFF);
+            linear[i * 3 + 2] = toLinear(rgb[i] & 0xFF);
+        }
+
+        double[][] factors = new double[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                factors[j * componentsX + i] = factor(linear, width, height, i, j);
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        appendBase83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+
+        double maximumValue;
+        if (factors.length > 1) {
+            double actualMaximum = 0;
+            for (int k = 1; k < factors.length; k++) {
+                for (double value : factors[k]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(value));
+                }
+            }
+            int quantisedMaximum = (int) Math.max(0, Math.min(82, Math.floor(actualMaximum * 166 - 0.5)));
+            maximumValue = (quantisedMaximum + 1) / 166.0;
+            appendBase83(hash, quantisedMaximum, 1);
+        } else {
+            maximumValue = 1;
+            appendBase83(hash, 0, 1);
+        }
+
+        double[] dc = factors[0];
+        appendBase83(hash, (toSrgb(dc[0]) << 16) + (toSrgb(dc[1]) << 8) + toSrgb(dc[2]), 4);
+        for (int k = 1; k < factors.length; k++) {
+            double[] ac = factors[k];
+            int value = quantiseAc(ac[0], maximumValue) * 19 * 19
+                    + quantiseAc(ac[1], maximumValue) * 19
+                    + quantiseAc(ac[2], maximumValue);
+            appendBase83(hash, value, 2);
+        }
+        return hash.toString();
+    }
+
+    private static double[] factor(double[] linear, int width, int height, int i, int j) {
+        double r = 0;
+        double g = 0;
+        double b = 0;
+        for (int y = 0; y < height; y++) {
+            double basisY = Math.cos(Math.PI * j * y / height);
+            for (int x = 0; x < width; x++) {
+                double basis = Math.cos(Math.PI * i * x / width) * basisY;
+                int offset = (y * width + x) * 3;
+                r += basis * linear[offset];
+                g += basis * linear[offset + 1];
+                b += basis * linear[offset + 2];
+            }
+        }
+        double scale = (i == 0 && j == 0 ? 1.0 : 2.0) / (width * height);
+        return new double[]{r * scale, g * scale, b * scale};
+    }
+
+    private static int quantiseAc(double value, double maximumValue) {
+        double signed = Math.copySign(Math.sqrt(Math.abs(value / maximumValue)), value);
+        return (int) Math.max(0, Math.min(18, Math.floor(signed * 9 + 9.5)));
+    }
+
+    private static double toLinear(int value) {
+        double v = value / 255.0;
+        return v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4);
+    }
+
+    private static int toSrgb(double value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308
+                ? (int) (v * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static void appendBase83(StringBuilder hash, int value, int length) {
+        for (int i = 1; i <= length; i++) {
+            int digit = (value / (int) Math.pow(83, length - i)) % 83;
+            hash.append(BASE83.charAt(digit));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.demo.util;
+
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * JPEG 的 EXIF 方向
+ * 手机拍摄的照片通常按传感器方向保存像素，再用 EXIF Orientation（1-8）标记显示时需要的旋转/翻转；
+ * ImageIO 解码时忽略这个标记。这里只读取 APP1 段中的 IFD0，不解析其他 EXIF 字段。
+ */
+public final class ExifOrientation {
+
+    // 不需要旋转
+    public static final int NORMAL = 1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * 读取图片文件的 EXIF 方向，不是 JPEG、没有 EXIF 或无法解析时返回 NORMAL
+     */
+    public static int read(Path file) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            return read(in);
+        } catch (IOException e) {
+            return NORMAL;
+        }
+    }
+
+    /**
+     * 从 JPEG 输入流读取 EXIF 方向（读到第一个图像数据段为止）
+     */
+    public static int read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readUnsignedShort() != 0xFFD8) {
+            return NORMAL;
+        }
+        try {
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == 0xFFDA || marker == 0xFFD9) {
+                    return NORMAL;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return NORMAL;
+                }
+                if (marker != 0xFFE1) {
+                    in.skipNBytes(length);
+                    continue;
+                }
+                byte[] segment = in.readNBytes(length);
+                int orientation = parseApp1(segment);
+                if (orientation != 0) {
+                    return orientation;
+                }
+            }
+        } catch (EOFException e) {
+            return NORMAL;
+        }
+    }
+
+    /**
+     * 方向为 5-8 时图片需要旋转90度，显示的宽高与存储的宽高互换
+     */
+    public static boolean swapsDimensions(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    /**
+     * 按 EXIF 方向把像素转为正向（NORMAL 或未知方向时返回原图）
+     */
+    public static BufferedImage apply(BufferedImage image, int orientation) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        // 原图坐标 (x, y) 到正向图坐标的变换，参数顺序为 m00, m10, m01, m11, m02, m12
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);
+            default -> null;
+        };
+        if (transform == null) {
+            return image;
+        }
+        boolean swap = swapsDimensions(orientation);
+        BufferedImage oriented = new BufferedImage(swap ? height : width, swap ? width : height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    /**
+     * 解析 APP1 段，不是 EXIF 或没有方向字段时返回0
+     */
+    private static int parseApp1(byte[] segment) {
+        // "Exif\0\0" 之后是 TIFF 头
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f'
+                || segment[4] != 0 || segment[5] != 0) {
+            return 0;
+        }
+        int tiff = 6;
+        boolean littleEndian;
+        if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            littleEndian = true;
+        } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return 0;
+        }
+        if (readShort(segment, tiff + 2, littleEndian) != 42) {
+            return 0;
+        }
+        long ifd = tiff + readInt(segment, tiff + 4, littleEndian);
+        if (ifd < tiff || ifd + 2 > segment.length) {
+            return 0;
+        }
+        int entries = readShort(segment, (int) ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > segment.length) {
+                return 0;
+            }
+            if (readShort(segment, entry, littleEndian) == TAG_ORIENTATION) {
+                int value = readShort(segment, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    private static int readShort(byte[] bytes, int offset, boolean littleEndian) {
+        int b0 = bytes[offset] & 0xFF;
+        int b1 = bytes[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static long readInt(byte[] bytes, int offset, boolean littleEndian) {
+        long high = readShort(bytes, littleEndian ? offset + 2 : offset, littleEndian);
+        long low = readShort(bytes, littleEndian ? offset : offset + 2, littleEndian);
+        return (high << 16) | low;
+    }
+}
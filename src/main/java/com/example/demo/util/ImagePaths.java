@@ -0,0 +1,93 @@
+package com.example.demo.util;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * 本地图片路径规范化
+ * 客户端提交的路径有多种写法（/uploads/posts/…、./uploads/posts/…、posts/yyyy/MM/…、/media/posts/…），
+ * 统一为 upload.root 下以 upload.root 开头的相对路径（例如 uploads/posts/2024/01/a.jpg），
+ * 保存时和清理未引用文件时都用同一规则，按字符串比较即可判断是否为同一文件。
+ */
+public final class ImagePaths {
+
+    // MediaController 提供图片的 URL 前缀
+    private static final String MEDIA_PREFIX = "media/";
+
+    private ImagePaths() {
+    }
+
+    /**
+     * 规范化图片路径
+     * 带协议的外部地址、越出 upload.root 的路径和不合法的路径只去掉首尾空白，原样返回。
+     * @param imagePath 图片路径
+     * @param uploadRoot upload.root 配置
+     * @return 规范化后的路径（imagePath 为null时返回null）
+     */
+    public static String canonical(String imagePath, String uploadRoot) {
+        if (imagePath == null) {
+            return null;
+        }
+        String trimmed = imagePath.trim();
+        if (trimmed.isEmpty() || trimmed.contains("://")) {
+            return trimmed;
+        }
+        String path = trimmed.replace('\\', '/');
+        int query = indexOfQuery(path);
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+
+        try {
+            Path rootPath = Paths.get(uploadRoot).normalize();
+            String root = root(uploadRoot);
+
+            // 文件系统绝对路径：在 upload.root 下时转为相对路径
+            if (path.startsWith("/")) {
+                Path absolute = Paths.get(path).normalize();
+                Path absoluteRoot = rootPath.toAbsolutePath().normalize();
+                if (absolute.startsWith(absoluteRoot) && !absolute.equals(absoluteRoot)) {
+                    return join(root, absoluteRoot.relativize(absolute).toString());
+                }
+            }
+
+            int start = 0;
+            while (start < path.length() && (path.charAt(start) == '/' || path.startsWith("./", start))) {
+                start += path.charAt(start) == '/' ? 1 : 2;
+            }
+            String relative = Paths.get(path.substring(start)).normalize().toString().replace('\\', '/');
+            if (relative.isEmpty() || relative.equals("..") || relative.startsWith("../")) {
+                return trimmed;
+            }
+            if (relative.startsWith(MEDIA_PREFIX)) {
+                relative = relative.substring(MEDIA_PREFIX.length());
+            } else if (relative.startsWith(root + "/")) {
+                relative = relative.substring(root.length() + 1);
+            }
+            return relative.isEmpty() ? trimmed : join(root, relative);
+        } catch (InvalidPathException e) {
+            return trimmed;
+        }
+    }
+
+    /**
+     * 规范化后的 upload.root（规范路径都以它加 / 开头）
+     */
+    public static String root(String uploadRoot) {
+        return Paths.get(uploadRoot).normalize().toString().replace('\\', '/');
+    }
+
+    private static String join(String root, String relative) {
+        return root + "/" + relative.replace('\\', '/');
+    }
+
+    private static int indexOfQuery(String path) {
+        int question = path.indexOf('?');
+        int hash = path.indexOf('#');
+        if (question < 0) {
+            return hash;
+        }
+        return hash < 0 ? question : Math.min(question, hash);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.demo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 时间轮（用于大量ID的超时过期）
+ * 每个槽位保存在该tick到期的ID，推进时只处理到期槽位，不需要扫描全部ID。
+ * 槽位数量必须覆盖最大超时时间，因此不需要处理多圈的情况。
+ */
+public class TimingWheel {
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<Set<Long>> buckets;
+    private final ConcurrentHashMap<Long, Integer> slotOf = new ConcurrentHashMap<>();
+    private volatile long lastTick;
+
+    /**
+     * @param tickMillis 每个槽位的时间跨度（毫秒）
+     * @param maxDelayMillis 支持的最大延迟（毫秒）
+     * @param nowMillis 当前时间
+     */
+    public TimingWheel(long tickMillis, long maxDelayMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        int size = Integer.highestOneBit((int) (maxDelayMillis / tickMillis) + 2) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(ConcurrentHashMap.newKeySet());
+        }
+        this.lastTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * 安排ID在指定时间到期（已安排过的ID会被移动到新的槽位）
+     */
+    public void schedule(Long id, long deadlineMillis) {
+        long tick = Math.max(deadlineMillis / tickMillis, lastTick + 1);
+        int slot = (int) (tick & mask);
+        Integer previous = slotOf.put(id, slot);
+        if (previous != null && previous != slot) {
+            buckets.get(previous).remove(id);
+        }
+        buckets.get(slot).add(id);
+    }
+
+    /**
+     * 取消ID的到期安排
+     */
+    public void cancel(Long id) {
+        Integer slot = slotOf.remove(id);
+        if (slot != null) {
+            buckets.get(slot).remove(id);
+        }
+    }
+
+    /**
+     * 推进时间轮到当前时间，返回经过的槽位中到期的ID
+     */
+    public synchronized List<Long> advance(long nowMillis) {
+        long nowTick = nowMillis / tickMillis;
+        List<Long> expired = new ArrayList<>();
+        // 调度停顿很久时，最多转一圈即可覆盖所有槽位
+        long from = Math.max(lastTick + 1, nowTick - mask);
+        for (long tick = from; tick <= nowTick; tick++) {
+            int slot = (int) (tick & mask);
+            Set<Long> bucket = buckets.get(slot);
+            for (Long id : bucket) {
+                bucket.remove(id);
+                if (slotOf.remove(id, slot)) {
+                    expired.add(id);
+                }
+            }
+        }
+        if (nowTick > lastTick) {
+            lastTick = nowTick;
+        }
+        return expired;
+    }
+}
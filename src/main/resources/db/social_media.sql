@@ -69,10 +69,39 @@ CREATE TABLE `friend`  (
   UNIQUE INDEX `uk_user_friend`(`user_id`, `friend_id`) USING BTREE,
   INDEX `idx_user_id`(`user_id`) USING BTREE,
   INDEX `idx_friend_id`(`friend_id`) USING BTREE,
+  INDEX `idx_user_create_time`(`user_id`, `create_time`, `id`) USING BTREE COMMENT '好友列表游标分页',
   CONSTRAINT `fk_friend_friend` FOREIGN KEY (`friend_id`) REFERENCES `user` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT,
   CONSTRAINT `fk_friend_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
 ) ENGINE = InnoDB AUTO_INCREMENT = 11 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '好友关系表' ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for friend_change_log
+-- ----------------------------
+DROP TABLE IF EXISTS `friend_change_log`;
+CREATE TABLE `friend_change_log`  (
+  `id` bigint UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '变更记录ID（全表写入顺序）',
+  `version` bigint UNSIGNED NOT NULL COMMENT '变更版本号（按用户由 friend_change_version 分配）',
+  `user_id` bigint UNSIGNED NOT NULL COMMENT '好友列表所属用户ID',
+  `friend_id` bigint UNSIGNED NOT NULL COMMENT '好友ID',
+  `op` varchar(10) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '操作：add(添加), remove(删除), remark(修改备注)',
+  `remark` varchar(50) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NULL DEFAULT NULL COMMENT '修改后的备注',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '变更时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_user_version`(`user_id`, `version`) USING BTREE COMMENT '按版本增量同步',
+  CONSTRAINT `fk_change_log_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '好友关系变更记录表' ROW_FORMAT = Dynamic;
+
+-- ----------------------------
+-- Table structure for friend_change_version
+-- ----------------------------
+DROP TABLE IF EXISTS `friend_change_version`;
+CREATE TABLE `friend_change_version`  (
+  `user_id` bigint UNSIGNED NOT NULL COMMENT '用户ID',
+  `version` bigint UNSIGNED NOT NULL COMMENT '该用户已分配的最大变更版本号',
+  PRIMARY KEY (`user_id`) USING BTREE,
+  CONSTRAINT `fk_change_version_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
+) ENGINE = InnoDB CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '好友变更版本计数器' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Table structure for friend_request
 -- ----------------------------
@@ -89,6 +118,7 @@ CREATE TABLE `friend_request`  (
   INDEX `idx_requester_id`(`requester_id`) USING BTREE,
   INDEX `idx_receiver_id`(`receiver_id`) USING BTREE,
   INDEX `idx_status`(`status`) USING BTREE,
+  INDEX `idx_receiver_status_time`(`receiver_id`, `status`, `create_time`, `id`) USING BTREE COMMENT '待处理申请计数与游标分页',
   CONSTRAINT `fk_request_receiver` FOREIGN KEY (`receiver_id`) REFERENCES `user` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT,
   CONSTRAINT `fk_request_requester` FOREIGN KEY (`requester_id`) REFERENCES `user` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
 ) ENGINE = InnoDB AUTO_INCREMENT = 3 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '好友申请表' ROW_FORMAT = Dynamic;
@@ -118,13 +148,37 @@ CREATE TABLE `post_image`  (
   `image_path` varchar(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '图片相对路径（本地路径）',
   `image_data` longblob NULL COMMENT '图片二进制数据',
   `sort_order` int UNSIGNED NOT NULL DEFAULT 0 COMMENT '图片排序（数字越小越靠前）',
+  `width` int UNSIGNED NULL DEFAULT NULL COMMENT '原图宽度（像素，后台处理后填充）',
+  `height` int UNSIGNED NULL DEFAULT NULL COMMENT '原图高度（像素，后台处理后填充）',
+  `placeholder` varchar(64) CHARACTER SET ascii COLLATE ascii_bin NULL DEFAULT NULL COMMENT '模糊占位图（BlurHash）',
+  `variant_attempts` int UNSIGNED NOT NULL DEFAULT 0 COMMENT '缩略图生成失败次数（达到上限后不再重试）',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   PRIMARY KEY (`id`) USING BTREE,
   INDEX `idx_post_id`(`post_id`) USING BTREE,
   INDEX `idx_sort_order`(`post_id`, `sort_order`) USING BTREE,
+  INDEX `idx_image_path`(`image_path`) USING BTREE,
   CONSTRAINT `fk_image_post` FOREIGN KEY (`post_id`) REFERENCES `post` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
 ) ENGINE = InnoDB AUTO_INCREMENT = 26 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '动态图片表' ROW_FORMAT = Dynamic;
 
+-- ----------------------------
+-- Table structure for post_image_variant
+-- ----------------------------
+DROP TABLE IF EXISTS `post_image_variant`;
+CREATE TABLE `post_image_variant`  (
+  `id` bigint UNSIGNED NOT NULL AUTO_INCREMENT COMMENT '缩略图记录唯一ID',
+  `post_image_id` bigint UNSIGNED NOT NULL COMMENT '关联的图片ID',
+  `max_edge` int UNSIGNED NOT NULL COMMENT '目标最长边（像素）',
+  `image_path` varchar(500) CHARACTER SET utf8mb4 COLLATE utf8mb4_unicode_ci NOT NULL COMMENT '缩略图相对路径（原图不大于目标尺寸时为原图路径）',
+  `width` int UNSIGNED NOT NULL COMMENT '宽度（像素）',
+  `height` int UNSIGNED NOT NULL COMMENT '高度（像素）',
+  `file_size` bigint UNSIGNED NOT NULL DEFAULT 0 COMMENT '文件大小（字节）',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`) USING BTREE,
+  UNIQUE INDEX `uk_image_edge`(`post_image_id`, `max_edge`) USING BTREE,
+  INDEX `idx_image_path`(`image_path`) USING BTREE,
+  CONSTRAINT `fk_variant_image` FOREIGN KEY (`post_image_id`) REFERENCES `post_image` (`id`) ON DELETE CASCADE ON UPDATE RESTRICT
+) ENGINE = InnoDB AUTO_INCREMENT = 1 CHARACTER SET = utf8mb4 COLLATE = utf8mb4_unicode_ci COMMENT = '动态图片缩略图表' ROW_FORMAT = Dynamic;
+
 -- ----------------------------
 -- Table structure for post_like
 -- ----------------------------
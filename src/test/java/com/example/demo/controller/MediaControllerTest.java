@@ -0,0 +1,49 @@
+package com.example.demo.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MediaControllerTest {
+
+    private static final long SIZE = 1000;
+
+    @Test
+    void parsesClosedRange() {
+        assertArrayEquals(new long[]{0, 499}, MediaController.parseRange("bytes=0-499", SIZE));
+        assertArrayEquals(new long[]{500, 999}, MediaController.parseRange("bytes=500-999", SIZE));
+    }
+
+    @Test
+    void parsesOpenEndedRange() {
+        assertArrayEquals(new long[]{900, 999}, MediaController.parseRange("bytes=900-", SIZE));
+    }
+
+    @Test
+    void parsesSuffixRange() {
+        assertArrayEquals(new long[]{900, 999}, MediaController.parseRange("bytes=-100", SIZE));
+        // 后缀比内容长时返回全部内容
+        assertArrayEquals(new long[]{0, 999}, MediaController.parseRange("bytes=-5000", SIZE));
+    }
+
+    @Test
+    void clampsEndToContentLength() {
+        assertArrayEquals(new long[]{100, 999}, MediaController.parseRange("bytes=100-5000", SIZE));
+    }
+
+    @Test
+    void unsatisfiableRangeReturnsNull() {
+        assertNull(MediaController.parseRange("bytes=1000-", SIZE));
+        assertNull(MediaController.parseRange("bytes=500-100", SIZE));
+        assertNull(MediaController.parseRange("bytes=-0", SIZE));
+    }
+
+    @Test
+    void unsupportedOrMalformedRangeServesWholeContent() {
+        assertArrayEquals(new long[0], MediaController.parseRange("items=0-10", SIZE));
+        assertArrayEquals(new long[0], MediaController.parseRange("bytes=0-10,20-30", SIZE));
+        assertArrayEquals(new long[0], MediaController.parseRange("bytes=abc", SIZE));
+        assertArrayEquals(new long[0], MediaController.parseRange("bytes=a-b", SIZE));
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.demo.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetCursorTest {
+
+    @Test
+    void encodeAndParseRoundTrip() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_000_000), 42L);
+
+        KeysetCursor parsed = KeysetCursor.parse(cursor.encode());
+
+        assertEquals(cursor.getCreateTime(), parsed.getCreateTime());
+        assertEquals(42L, parsed.getId());
+    }
+
+    @Test
+    void roundTripKeepsWholeSecondTimes() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2024, 1, 1, 0, 0), 1L);
+        assertEquals(cursor.getCreateTime(), KeysetCursor.parse(cursor.encode()).getCreateTime());
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = new KeysetCursor(LocalDateTime.of(2024, 5, 1, 12, 30), Long.MAX_VALUE).encode();
+        assertFalse(encoded.contains("+") || encoded.contains("/") || encoded.contains("="));
+    }
+
+    @Test
+    void blankCursorMeansFirstPage() {
+        assertNull(KeysetCursor.parse(null));
+        assertNull(KeysetCursor.parse(""));
+        assertNull(KeysetCursor.parse("   "));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(RuntimeException.class, () -> KeysetCursor.parse("not a cursor!"));
+        assertThrows(RuntimeException.class, () -> KeysetCursor.parse("YWJj"));
+    }
+}
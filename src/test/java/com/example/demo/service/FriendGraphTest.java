@@ -0,0 +1,67 @@
+package com.example.demo.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class FriendGraphTest {
+
+    @Test
+    void intersectReturnsCommonElementsInOrder() {
+        long[] a = {1, 3, 5, 7, 9};
+        long[] b = {2, 3, 4, 7, 10};
+        assertArrayEquals(new long[]{3, 7}, FriendGraph.intersect(a, b));
+    }
+
+    @Test
+    void intersectHandlesEmptyAndDisjointInputs() {
+        assertArrayEquals(new long[0], FriendGraph.intersect(new long[0], new long[]{1, 2}));
+        assertArrayEquals(new long[0], FriendGraph.intersect(new long[]{1, 2}, new long[0]));
+        assertArrayEquals(new long[0], FriendGraph.intersect(new long[]{1, 2}, new long[]{3, 4}));
+    }
+
+    @Test
+    void intersectOfSubsetIsTheSubset() {
+        long[] small = {2, 4, 6};
+        long[] large = {1, 2, 3, 4, 5, 6, 7};
+        assertArrayEquals(small, FriendGraph.intersect(small, large));
+        assertArrayEquals(small, FriendGraph.intersect(large, small));
+    }
+
+    @Test
+    void intersectMatchesSetIntersection() {
+        Random random = new Random(7);
+        for (int round = 0; round < 100; round++) {
+            long[] a = randomSorted(random);
+            long[] b = randomSorted(random);
+            TreeSet<Long> expected = new TreeSet<>();
+            for (long value : a) {
+                expected.add(value);
+            }
+            TreeSet<Long> other = new TreeSet<>();
+            for (long value : b) {
+                other.add(value);
+            }
+            expected.retainAll(other);
+
+            long[] expectedArray = expected.stream().mapToLong(Long::longValue).toArray();
+            assertArrayEquals(expectedArray, FriendGraph.intersect(a, b));
+        }
+    }
+
+    @Test
+    void intersectDoesNotModifyInputs() {
+        long[] a = {1, 2, 3};
+        long[] b = {2, 3, 4};
+        FriendGraph.intersect(a, b);
+        assertArrayEquals(new long[]{1, 2, 3}, a);
+        assertArrayEquals(new long[]{2, 3, 4}, b);
+    }
+
+    private static long[] randomSorted(Random random) {
+        return random.longs(random.nextInt(200), 1, 500).distinct().sorted().toArray();
+    }
+}
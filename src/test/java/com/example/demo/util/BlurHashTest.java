@@ -0,0 +1,69 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BlurHashTest {
+
+    private static BufferedImage solid(int width, int height, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void hashLengthFollowsComponentCount() {
+        BufferedImage image = solid(32, 24, 0x336699);
+        assertEquals(28, BlurHash.encode(image, 4, 3).length());
+        assertEquals(6, BlurHash.encode(image, 1, 1).length());
+        assertEquals(4 + 2 * 81, BlurHash.encode(image, 9, 9).length());
+    }
+
+    @Test
+    void solidWhiteImageEncodesWhiteDc() {
+        // 1x1 分量：大小标记0，最大 AC 值0；0xFFFFFF = 29*83^3 + 28*83^2 + 30*83 + 10
+        assertEquals("00" + "TSUA", BlurHash.encode(solid(16, 12, 0xFFFFFF), 1, 1));
+    }
+
+    @Test
+    void headerEncodesComponentCount() {
+        String hash = BlurHash.encode(solid(16, 12, 0x808080), 4, 3);
+        // (4-1) + (3-1)*9 = 21
+        assertEquals("L", hash.substring(0, 1));
+    }
+
+    @Test
+    void solidBlackImageEncodesZeroDc() {
+        assertEquals("00" + "0000", BlurHash.encode(solid(8, 8, 0x000000), 1, 1));
+    }
+
+    @Test
+    void gradientProducesNonZeroAcComponents() {
+        BufferedImage image = new BufferedImage(32, 8, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < 32; x++) {
+            int v = x * 8;
+            for (int y = 0; y < 8; y++) {
+                image.setRGB(x, y, (v << 16) | (v << 8) | v);
+            }
+        }
+        String hash = BlurHash.encode(image, 4, 3);
+        assertEquals(28, hash.length());
+        assertNotEquals("0", hash.substring(1, 2));
+    }
+
+    @Test
+    void rejectsComponentCountOutOfRange() {
+        BufferedImage image = solid(4, 4, 0);
+        assertThrows(IllegalArgumentException.class, () -> BlurHash.encode(image, 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> BlurHash.encode(image, 4, 10));
+    }
+}
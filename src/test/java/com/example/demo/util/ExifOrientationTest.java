@@ -0,0 +1,76 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ExifOrientationTest {
+
+    @Test
+    void readsOrientationFromBigAndLittleEndianExif() throws IOException {
+        assertEquals(6, ExifOrientation.read(new ByteArrayInputStream(jpegWithOrientation(6, false))));
+        assertEquals(8, ExifOrientation.read(new ByteArrayInputStream(jpegWithOrientation(8, true))));
+    }
+
+    @Test
+    void returnsNormalWithoutExif() throws IOException {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(new ByteArrayInputStream(png)));
+        byte[] bareJpeg = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2};
+        assertEquals(ExifOrientation.NORMAL, ExifOrientation.read(new ByteArrayInputStream(bareJpeg)));
+    }
+
+    @Test
+    void rotatesClockwiseForOrientationSix() {
+        // 3x2 的图，左上角为红色
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xFFFF0000);
+        BufferedImage oriented = ExifOrientation.apply(image, 6);
+        assertEquals(2, oriented.getWidth());
+        assertEquals(3, oriented.getHeight());
+        // 顺时针旋转90度后左上角移到右上角
+        assertEquals(0xFFFF0000, oriented.getRGB(1, 0));
+    }
+
+    @Test
+    void flipsAndRotatesForOtherOrientations() {
+        BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, 0xFFFF0000);
+        assertEquals(0xFFFF0000, ExifOrientation.apply(image, 2).getRGB(2, 0));
+        assertEquals(0xFFFF0000, ExifOrientation.apply(image, 3).getRGB(2, 1));
+        assertEquals(0xFFFF0000, ExifOrientation.apply(image, 4).getRGB(0, 1));
+        assertEquals(0xFFFF0000, ExifOrientation.apply(image, 5).getRGB(0, 0));
+        assertEquals(0xFFFF0000, ExifOrientation.apply(image, 7).getRGB(1, 2));
+        assertEquals(0xFFFF0000, ExifOrientation.apply(image, 8).getRGB(0, 2));
+        assertSame(image, ExifOrientation.apply(image, ExifOrientation.NORMAL));
+    }
+
+    /**
+     * SOI + 只含方向字段的 APP1 段 + SOS
+     */
+    private static byte[] jpegWithOrientation(int orientation, boolean littleEndian) {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        if (littleEndian) {
+            tiff.writeBytes(new byte[]{'I', 'I', 42, 0, 8, 0, 0, 0, 1, 0, 0x12, 0x01, 3, 0, 1, 0, 0, 0,
+                    (byte) orientation, 0, 0, 0, 0, 0, 0, 0});
+        } else {
+            tiff.writeBytes(new byte[]{'M', 'M', 0, 42, 0, 0, 0, 8, 0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1,
+                    0, (byte) orientation, 0, 0, 0, 0, 0, 0});
+        }
+        byte[] body = tiff.toByteArray();
+        int length = 2 + 6 + body.length;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE1,
+                (byte) (length >> 8), (byte) length, 'E', 'x', 'i', 'f', 0, 0});
+        out.writeBytes(body);
+        out.writeBytes(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2});
+        return out.toByteArray();
+    }
+}
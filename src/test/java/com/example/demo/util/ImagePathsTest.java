@@ -0,0 +1,41 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ImagePathsTest {
+
+    private static final String ROOT = "uploads";
+
+    @Test
+    void keepsCanonicalPath() {
+        assertEquals("uploads/posts/2024/01/a.jpg", ImagePaths.canonical("uploads/posts/2024/01/a.jpg", ROOT));
+    }
+
+    @Test
+    void normalizesClientSpellings() {
+        assertEquals("uploads/posts/a.jpg", ImagePaths.canonical("/uploads/posts/a.jpg", ROOT));
+        assertEquals("uploads/posts/a.jpg", ImagePaths.canonical("./uploads/posts/a.jpg", ROOT));
+        assertEquals("uploads/posts/2024/01/a.jpg", ImagePaths.canonical(" posts/2024/01/a.jpg ", ROOT));
+        assertEquals("uploads/posts/a.jpg", ImagePaths.canonical("/media/posts/a.jpg?v=1", ROOT));
+        assertEquals("uploads/posts/a.jpg", ImagePaths.canonical("uploads\\posts\\a.jpg", ROOT));
+        assertEquals("uploads/posts/a.jpg", ImagePaths.canonical("uploads//posts/./a.jpg", ROOT));
+    }
+
+    @Test
+    void relativizesAbsolutePathUnderRoot() {
+        String absolute = Paths.get(ROOT, "posts", "a.jpg").toAbsolutePath().toString();
+        assertEquals("uploads/posts/a.jpg", ImagePaths.canonical(absolute, ROOT));
+    }
+
+    @Test
+    void leavesExternalAndEscapingPathsAlone() {
+        assertEquals("http://cdn.example.com/a.jpg", ImagePaths.canonical(" http://cdn.example.com/a.jpg", ROOT));
+        assertEquals("../etc/passwd", ImagePaths.canonical("../etc/passwd", ROOT));
+        assertNull(ImagePaths.canonical(null, ROOT));
+    }
+}
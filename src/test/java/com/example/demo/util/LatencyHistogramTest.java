@@ -0,0 +1,47 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void smallValuesHaveTheirOwnBucket() {
+        for (int v = 0; v < 8; v++) {
+            assertEquals(v, LatencyHistogram.bucketOf(v));
+            assertEquals(v, LatencyHistogram.upperBound(v));
+        }
+    }
+
+    @Test
+    void firstLogarithmicBucketsAreExact() {
+        assertEquals(8, LatencyHistogram.bucketOf(8));
+        assertEquals(15, LatencyHistogram.bucketOf(15));
+        assertEquals(16, LatencyHistogram.bucketOf(16));
+        assertEquals(16, LatencyHistogram.bucketOf(17));
+        assertEquals(17, LatencyHistogram.upperBound(16));
+    }
+
+    @Test
+    void upperBoundIsLastValueOfBucket() {
+        int last = LatencyHistogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(last));
+        for (int bucket = 0; bucket < last; bucket++) {
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(upper + 1));
+        }
+    }
+
+    @Test
+    void relativeErrorIsBoundedByOneEighth() {
+        long[] samples = {9, 100, 1_000, 12_345, 999_999, 1_000_000_007L, Long.MAX_VALUE / 3};
+        for (long value : samples) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.bucketOf(value));
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value / 8, "value " + value + " upper " + upper);
+        }
+    }
+}
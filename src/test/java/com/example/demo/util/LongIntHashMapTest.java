@@ -0,0 +1,74 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LongIntHashMapTest {
+
+    @Test
+    void addToAccumulatesPerKey() {
+        LongIntHashMap map = new LongIntHashMap();
+        map.addTo(7, 1);
+        map.addTo(7, 2);
+        map.addTo(9, 5);
+
+        assertEquals(3, map.get(7));
+        assertEquals(5, map.get(9));
+        assertEquals(0, map.get(8));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void matchesHashMapAcrossResizes() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            long key = 1 + random.nextInt(20_000);
+            map.addTo(key, 1);
+            expected.merge(key, 1, Integer::sum);
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().intValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void addAllMergesCounts() {
+        LongIntHashMap a = new LongIntHashMap();
+        a.addTo(1, 1);
+        a.addTo(2, 1);
+        LongIntHashMap b = new LongIntHashMap();
+        b.addTo(2, 3);
+        b.addTo(3, 4);
+
+        a.addAll(b);
+
+        assertEquals(1, a.get(1));
+        assertEquals(4, a.get(2));
+        assertEquals(4, a.get(3));
+        assertEquals(3, a.size());
+    }
+
+    @Test
+    void forEachVisitsEveryEntry() {
+        LongIntHashMap map = new LongIntHashMap();
+        for (long key = 1; key <= 100; key++) {
+            map.addTo(key, (int) key);
+        }
+        long[] sum = new long[2];
+        map.forEach((key, value) -> {
+            sum[0] += key;
+            sum[1] += value;
+        });
+        assertEquals(5050, sum[0]);
+        assertEquals(5050, sum[1]);
+    }
+}
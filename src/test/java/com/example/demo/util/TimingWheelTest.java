@@ -0,0 +1,64 @@
+package com.example.demo.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK = 1000;
+
+    @Test
+    void expiresOnlyAfterDeadline() {
+        TimingWheel wheel = new TimingWheel(TICK, 60_000, 0);
+        wheel.schedule(1L, 5_000);
+
+        assertTrue(wheel.advance(4_999).isEmpty());
+        assertEquals(List.of(1L), wheel.advance(5_000));
+        // 到期后不会再次返回
+        assertTrue(wheel.advance(6_000).isEmpty());
+    }
+
+    @Test
+    void rescheduleMovesToNewDeadline() {
+        TimingWheel wheel = new TimingWheel(TICK, 60_000, 0);
+        wheel.schedule(1L, 5_000);
+        wheel.schedule(1L, 20_000);
+
+        assertTrue(wheel.advance(10_000).isEmpty());
+        assertEquals(List.of(1L), wheel.advance(20_000));
+    }
+
+    @Test
+    void cancelledIdNeverExpires() {
+        TimingWheel wheel = new TimingWheel(TICK, 60_000, 0);
+        wheel.schedule(1L, 5_000);
+        wheel.schedule(2L, 5_000);
+        wheel.cancel(1L);
+
+        assertEquals(List.of(2L), wheel.advance(5_000));
+    }
+
+    @Test
+    void pastDeadlineExpiresOnNextTick() {
+        TimingWheel wheel = new TimingWheel(TICK, 60_000, 10_000);
+        wheel.schedule(1L, 3_000);
+
+        assertTrue(wheel.advance(10_500).isEmpty());
+        assertEquals(List.of(1L), wheel.advance(11_000));
+    }
+
+    @Test
+    void longPauseExpiresEverything() {
+        TimingWheel wheel = new TimingWheel(TICK, 60_000, 0);
+        for (long id = 1; id <= 50; id++) {
+            wheel.schedule(id, id * TICK);
+        }
+
+        List<Long> expired = wheel.advance(10 * 60_000);
+        assertEquals(50, expired.size());
+    }
+}